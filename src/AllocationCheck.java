@@ -0,0 +1,75 @@
+import entity.World;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+
+import static entity.AppConfig.*;
+
+/**
+ * Allocation gate for World.tick: for each of several seeds, after a warm-up (so the JIT has
+ * compiled the tick and the jail wheel's slot lists have grown to their working size) a run of
+ * ticks must allocate at most maxBytes per tick on average, measured with the thread's
+ * allocated-bytes counter. Collections during the measured ticks are reported as well. Exits with
+ * status 1 when any seed exceeds the budget, so it can run in CI next to DifferentialCheck.
+ *
+ * -Drebellion.alloc.size, .warmup, .ticks, .maxBytes, .seeds and -Drebellion.seed (the first seed)
+ * override the defaults.
+ */
+public class AllocationCheck {
+    private static final int WORLD_SIZE = Integer.getInteger("rebellion.alloc.size", 40);
+    private static final int WARMUP = Integer.getInteger("rebellion.alloc.warmup", 2000);
+    private static final int TICKS = Integer.getInteger("rebellion.alloc.ticks", 1000);
+    private static final long MAX_BYTES = Long.getLong("rebellion.alloc.maxBytes", 16);
+    private static final int SEEDS = Integer.getInteger("rebellion.alloc.seeds", 3);
+    private static final long BASE_SEED = Long.getLong("rebellion.seed", System.nanoTime());
+
+    public static void main(String[] args) {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        if (!threads.isThreadAllocatedMemorySupported()) {
+            System.err.println("Thread allocation counters are not supported by this JVM");
+            System.exit(1);
+        }
+
+        boolean ok = true;
+        for (int s = 0; s < SEEDS; s++) {
+            ok &= check(threads, BASE_SEED + s);
+        }
+        if (!ok) {
+            System.exit(1);
+        }
+    }
+
+    private static boolean check(com.sun.management.ThreadMXBean threads, long seed) {
+        World world = new World(WORLD_SIZE, WORLD_SIZE, seed);
+        world.setup(INITIAL_AGENT_DENSITY, INITIAL_COP_DENSITY, K, THRESHOLD, GOVERNMENT_LEGITIMACY);
+        for (int i = 0; i < WARMUP; i++) {
+            world.tick();
+        }
+
+        long collections = collections();
+        long before = threads.getCurrentThreadAllocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < TICKS; i++) {
+            world.tick();
+        }
+        long elapsed = System.nanoTime() - start;
+        double bytesPerTick = (double) (threads.getCurrentThreadAllocatedBytes() - before) / TICKS;
+        collections = collections() - collections;
+
+        boolean ok = bytesPerTick <= MAX_BYTES;
+        System.out.printf("%dx%d world, seed %d: %.1f bytes/tick over %d ticks after %d warm-up ticks, "
+                        + "%d collections, %.1f us/tick (budget %d bytes/tick) %s%n",
+                WORLD_SIZE, WORLD_SIZE, seed, bytesPerTick, TICKS, WARMUP, collections, elapsed / 1e3 / TICKS,
+                MAX_BYTES, ok ? "PASS" : "FAIL");
+        return ok;
+    }
+
+    private static long collections() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, gc.getCollectionCount());
+        }
+        return count;
+    }
+}
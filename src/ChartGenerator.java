@@ -5,87 +5,71 @@ import java.io.File;
 import java.io.IOException;
 import java.util.List;
 import javax.imageio.ImageIO;
+import metrics.ChartRenderEvent;
 
 public class ChartGenerator {
     
-    public static void generateTimeSeriesChart(List<Integer> activeCounts, 
-                                             List<Integer> jailedCounts,
-                                             List<Integer> quietCounts,
+    public static void generateTimeSeriesChart(IntSeries activeCounts, 
+                                             IntSeries jailedCounts,
+                                             IntSeries quietCounts,
                                              String experimentId) {
+        ChartRenderEvent event = ChartRenderEvent.isRecorded() ? ChartRenderEvent.begin("TimeSeriesChart") : null;
         JPanel chartPanel = new TimeSeriesChart(activeCounts, jailedCounts, quietCounts, 
             "Experiment " + experimentId + " Time Series");
-        
-        // Create a frame to render the chart
-        JFrame frame = new JFrame();
-        frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
-        frame.add(chartPanel);
-        frame.pack();
-        
-        // Create an image from the panel
-        BufferedImage image = new BufferedImage(
-            chartPanel.getWidth(),
-            chartPanel.getHeight(),
-            BufferedImage.TYPE_INT_RGB
-        );
-        Graphics2D g2d = image.createGraphics();
-        chartPanel.paint(g2d);
-        g2d.dispose();
-        
-        // Save the image
-        try {
-            ImageIO.write(image, "png", 
-                new File("parameter_exploration_results/experiment_" + experimentId + "_timeseries.png"));
-        } catch (IOException e) {
-            System.err.println("Error saving time series chart: " + e.getMessage());
+
+        writePng(chartPanel, new File("parameter_exploration_results/experiment_" + experimentId + "_timeseries.png"),
+            "time series");
+        if (event != null) {
+            event.end(activeCounts.size());
         }
-        
-        frame.dispose();
     }
 
-    public static void generateRebellionSizeChart(List<Integer> rebellionSizes, String experimentId) {
+    public static void generateRebellionSizeChart(IntSeries rebellionSizes, String experimentId) {
+        ChartRenderEvent event = ChartRenderEvent.isRecorded() ? ChartRenderEvent.begin("RebellionSizeChart") : null;
         JPanel chartPanel = new RebellionSizeChart(rebellionSizes, 
             "Experiment " + experimentId + " Rebellion Size Over Time");
-        
-        // Create a frame to render the chart
-        JFrame frame = new JFrame();
-        frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
-        frame.add(chartPanel);
-        frame.pack();
-        
-        // Create an image from the panel
-        BufferedImage image = new BufferedImage(
-            chartPanel.getWidth(),
-            chartPanel.getHeight(),
-            BufferedImage.TYPE_INT_RGB
-        );
-        Graphics2D g2d = image.createGraphics();
-        chartPanel.paint(g2d);
-        g2d.dispose();
-        
-        // Save the image
-        try {
-            ImageIO.write(image, "png", 
-                new File("parameter_exploration_results/experiment_" + experimentId + "_rebellion_size.png"));
-        } catch (IOException e) {
-            System.err.println("Error saving rebellion size chart: " + e.getMessage());
+
+        writePng(chartPanel, new File("parameter_exploration_results/experiment_" + experimentId + "_rebellion_size.png"),
+            "rebellion size");
+        if (event != null) {
+            event.end(rebellionSizes.size());
         }
-        
-        frame.dispose();
     }
 
     public static void generateParameterInteractionChart(List<Double> copDensities,
                                                        List<Double> legitimacies,
                                                        List<Double> stabilityIndices) {
+        ChartRenderEvent event = ChartRenderEvent.isRecorded()
+                ? ChartRenderEvent.begin("ParameterInteractionChart") : null;
         JPanel chartPanel = new ParameterInteractionChart(copDensities, legitimacies, stabilityIndices,
             "Parameter Interaction: Cop Density vs Legitimacy");
-        
-        // Create a frame to render the chart
-        JFrame frame = new JFrame();
-        frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
-        frame.add(chartPanel);
-        frame.pack();
-        
-        // Create an image from the panel
+
+        writePng(chartPanel, new File("parameter_exploration_results/parameter_interaction.png"), "parameter interaction");
+        if (event != null) {
+            event.end(stabilityIndices.size());
+        }
+    }
+
+    /**
+     * Line chart of one or more series over shared x values (threads, grid sizes, ...), with an
+     * optional dashed reference series (e.g. ideal speedup), written to file
+     */
+    public static void generateScalingChart(String title, String xLabel, String yLabel, double[] xs,
+                                            List<String> names, List<double[]> series, double[] reference,
+                                            File file) {
+        ChartRenderEvent event = ChartRenderEvent.isRecorded() ? ChartRenderEvent.begin("ScalingChart") : null;
+        JPanel chartPanel = new ScalingChart(title, xLabel, yLabel, xs, names, series, reference);
+
+        writePng(chartPanel, file, "scaling");
+        if (event != null) {
+            event.end(xs.length * series.size());
+        }
+    }
+
+    // Paint the panel at its preferred size into a PNG file; no window is opened, so this also
+    // works on a headless machine
+    private static void writePng(JPanel chartPanel, File file, String chart) {
+        chartPanel.setSize(chartPanel.getPreferredSize());
         BufferedImage image = new BufferedImage(
             chartPanel.getWidth(),
             chartPanel.getHeight(),
@@ -94,24 +78,20 @@ public class ChartGenerator {
         Graphics2D g2d = image.createGraphics();
         chartPanel.paint(g2d);
         g2d.dispose();
-        
-        // Save the image
+
         try {
-            ImageIO.write(image, "png", 
-                new File("parameter_exploration_results/parameter_interaction.png"));
+            ImageIO.write(image, "png", file);
         } catch (IOException e) {
-            System.err.println("Error saving parameter interaction chart: " + e.getMessage());
+            System.err.println("Error saving " + chart + " chart: " + e.getMessage());
         }
-        
-        frame.dispose();
     }
 }
 
 class TimeSeriesChart extends JPanel {
-    private final List<Integer> active, jailed, quiet;
+    private final IntSeries active, jailed, quiet;
     private final String title;
     
-    public TimeSeriesChart(List<Integer> active, List<Integer> jailed, List<Integer> quiet, String title) {
+    public TimeSeriesChart(IntSeries active, IntSeries jailed, IntSeries quiet, String title) {
         this.active = active;
         this.jailed = jailed;
         this.quiet = quiet;
@@ -133,10 +113,7 @@ class TimeSeriesChart extends JPanel {
         g2d.drawString(title, padding, padding - 20);
         
         // Find maximum value
-        int max = Math.max(Math.max(
-            active.stream().max(Integer::compareTo).orElse(1),
-            jailed.stream().max(Integer::compareTo).orElse(1)),
-            quiet.stream().max(Integer::compareTo).orElse(1));
+        int max = Math.max(Math.max(active.max(), jailed.max()), quiet.max());
         
         // If all values are 0, set max to 1 to avoid division by zero
         if (max == 0) max = 1;
@@ -166,26 +143,38 @@ class TimeSeriesChart extends JPanel {
         g2d.drawString("Quiet", w - 100, padding + 60);
     }
     
-    private void drawLine(Graphics2D g2d, List<Integer> data, Color color, int w, int h, int max, int padding) {
+    private void drawLine(Graphics2D g2d, IntSeries data, Color color, int w, int h, int max, int padding) {
         if (data.isEmpty()) return;
         
         g2d.setColor(color);
-        int n = data.size();
-        for (int i = 1; i < n; i++) {
-            int x1 = padding + (w - 2 * padding) * (i-1) / (n-1);
-            int y1 = h - padding - (h - 2 * padding) * data.get(i-1) / max;
-            int x2 = padding + (w - 2 * padding) * i / (n-1);
-            int y2 = h - padding - (h - 2 * padding) * data.get(i) / max;
-            g2d.drawLine(x1, y1, x2, y2);
+        drawSeries(g2d, data, w, h, max, padding);
+    }
+
+    /**
+     * Draw a series as a polyline through its largest-triangle-three-buckets summary,
+     * at most one point per pixel column, so paint time does not depend on run length
+     */
+    static void drawSeries(Graphics2D g2d, IntSeries data, int w, int h, int max, int padding) {
+        int threshold = Math.max(3, w - 2 * padding);
+        double[] xs = new double[threshold];
+        double[] ys = new double[threshold];
+        int n = data.lttb(threshold, xs, ys);
+        double span = Math.max(1, data.size() - 1);
+        int[] px = new int[n];
+        int[] py = new int[n];
+        for (int i = 0; i < n; i++) {
+            px[i] = padding + (int) ((w - 2 * padding) * xs[i] / span);
+            py[i] = h - padding - (int) ((h - 2 * padding) * ys[i] / max);
         }
+        g2d.drawPolyline(px, py, n);
     }
 }
 
 class RebellionSizeChart extends JPanel {
-    private final List<Integer> rebellionSizes;
+    private final IntSeries rebellionSizes;
     private final String title;
     
-    public RebellionSizeChart(List<Integer> rebellionSizes, String title) {
+    public RebellionSizeChart(IntSeries rebellionSizes, String title) {
         this.rebellionSizes = rebellionSizes;
         this.title = title;
         setPreferredSize(new Dimension(800, 600));
@@ -205,7 +194,7 @@ class RebellionSizeChart extends JPanel {
         g2d.drawString(title, padding, padding - 20);
         
         // Find maximum value
-        int max = rebellionSizes.stream().max(Integer::compareTo).orElse(1);
+        int max = rebellionSizes.max();
         
         // If all values are 0, set max to 1 to avoid division by zero
         if (max == 0) max = 1;
@@ -224,14 +213,7 @@ class RebellionSizeChart extends JPanel {
         // Draw line
         if (!rebellionSizes.isEmpty()) {
             g2d.setColor(Color.RED);
-            int n = rebellionSizes.size();
-            for (int i = 1; i < n; i++) {
-                int x1 = padding + (w - 2 * padding) * (i-1) / (n-1);
-                int y1 = h - padding - (h - 2 * padding) * rebellionSizes.get(i-1) / max;
-                int x2 = padding + (w - 2 * padding) * i / (n-1);
-                int y2 = h - padding - (h - 2 * padding) * rebellionSizes.get(i) / max;
-                g2d.drawLine(x1, y1, x2, y2);
-            }
+            TimeSeriesChart.drawSeries(g2d, rebellionSizes, w, h, max, padding);
         }
     }
 }
@@ -324,4 +306,108 @@ class ParameterInteractionChart extends JPanel {
                 w - 150, padding + 40 + i * 20);
         }
     }
-} 
\ No newline at end of file
+} 
+
+class ScalingChart extends JPanel {
+    private static final Color[] COLORS = {Color.RED, Color.BLUE, new Color(0, 150, 0), Color.MAGENTA, Color.ORANGE};
+    private final String title, xLabel, yLabel;
+    private final double[] xs, reference;
+    private final List<String> names;
+    private final List<double[]> series;
+
+    public ScalingChart(String title, String xLabel, String yLabel, double[] xs, List<String> names,
+                        List<double[]> series, double[] reference) {
+        this.title = title;
+        this.xLabel = xLabel;
+        this.yLabel = yLabel;
+        this.xs = xs;
+        this.names = names;
+        this.series = series;
+        this.reference = reference;
+        setPreferredSize(new Dimension(800, 600));
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        super.paintComponent(g);
+        Graphics2D g2d = (Graphics2D) g;
+        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+
+        int w = getWidth(), h = getHeight();
+        int padding = 70;
+
+        // Draw title
+        g2d.setFont(new Font("Arial", Font.BOLD, 16));
+        g2d.drawString(title, padding, padding - 30);
+        g2d.setFont(new Font("Arial", Font.PLAIN, 12));
+
+        // Ranges: y from 0, x over the given values
+        double max = 0;
+        for (double[] ys : series) {
+            for (double y : ys) {
+                max = Math.max(max, y);
+            }
+        }
+        if (reference != null) {
+            for (double y : reference) {
+                max = Math.max(max, y);
+            }
+        }
+        if (max == 0) max = 1;
+        double minX = xs.length == 0 ? 0 : xs[0], maxX = xs.length == 0 ? 1 : xs[xs.length - 1];
+        if (maxX == minX) maxX = minX + 1;
+
+        // Draw axes, with a tick label at every x value
+        g2d.setColor(Color.BLACK);
+        g2d.drawLine(padding, h - padding, w - padding, h - padding); // x-axis
+        g2d.drawLine(padding, h - padding, padding, padding);         // y-axis
+        g2d.drawString("0", padding - 15, h - padding + 5);
+        g2d.drawString(String.format("%.3g", max), padding - 60, padding + 5);
+        for (double x : xs) {
+            int px = xPixel(x, minX, maxX, w, padding);
+            g2d.drawLine(px, h - padding, px, h - padding + 5);
+            g2d.drawString(x == Math.rint(x) ? String.valueOf((long) x) : String.format("%.2f", x), px - 10, h - padding + 20);
+        }
+        g2d.drawString(xLabel, w / 2, h - padding + 45);
+        g2d.drawString(yLabel, 5, padding - 10);
+
+        // Draw the reference dashed, then the series
+        if (reference != null) {
+            g2d.setColor(Color.GRAY);
+            g2d.setStroke(new BasicStroke(1, BasicStroke.CAP_BUTT, BasicStroke.JOIN_MITER, 10, new float[]{6, 6}, 0));
+            drawPolyline(g2d, reference, minX, maxX, max, w, h, padding);
+        }
+        g2d.setStroke(new BasicStroke(2));
+        for (int s = 0; s < series.size(); s++) {
+            g2d.setColor(COLORS[s % COLORS.length]);
+            drawPolyline(g2d, series.get(s), minX, maxX, max, w, h, padding);
+        }
+
+        // Draw legend
+        g2d.setFont(new Font("Arial", Font.PLAIN, 12));
+        for (int s = 0; s < names.size(); s++) {
+            g2d.setColor(COLORS[s % COLORS.length]);
+            g2d.drawString(names.get(s), w - 200, padding + 20 * s);
+        }
+        if (reference != null) {
+            g2d.setColor(Color.GRAY);
+            g2d.drawString("ideal", w - 200, padding + 20 * names.size());
+        }
+    }
+
+    private void drawPolyline(Graphics2D g2d, double[] ys, double minX, double maxX, double max, int w, int h, int padding) {
+        int n = Math.min(xs.length, ys.length);
+        int[] px = new int[n];
+        int[] py = new int[n];
+        for (int i = 0; i < n; i++) {
+            px[i] = xPixel(xs[i], minX, maxX, w, padding);
+            py[i] = h - padding - (int) ((h - 2 * padding) * ys[i] / max);
+            g2d.fillOval(px[i] - 3, py[i] - 3, 6, 6);
+        }
+        g2d.drawPolyline(px, py, n);
+    }
+
+    private static int xPixel(double x, double minX, double maxX, int w, int padding) {
+        return padding + (int) ((w - 2 * padding) * (x - minX) / (maxX - minX));
+    }
+}
@@ -0,0 +1,76 @@
+import metrics.TickMetrics;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Pipeline consumer writing simulation_results.csv: one line per tick,
+ * followed by the max/min/average statistics when the pipeline closes
+ */
+public class CsvTickWriter implements TickPipeline.Consumer {
+    private final BufferedWriter writer;
+
+    // Series to store statistics
+    private final IntSeries quietSeries = new IntSeries();
+    private final IntSeries jailedSeries = new IntSeries();
+    private final IntSeries activeSeries = new IntSeries();
+
+    public CsvTickWriter(Path path) throws IOException {
+        this.writer = Files.newBufferedWriter(path);
+        writer.write("TimeStep,ActiveAgents,JailedAgents,QuietAgents,TotalCops\n");
+    }
+
+    @Override
+    public void accept(TickSnapshot s) throws IOException {
+        long t = TickMetrics.start();
+        quietSeries.add(s.quiet());
+        jailedSeries.add(s.jailed());
+        activeSeries.add(s.active());
+        writer.write(String.format("%d,%d,%d,%d,%d\n",
+            s.tick(),
+            s.active(),
+            s.jailed(),
+            s.quiet(),
+            s.cops()
+        ));
+        TickMetrics.lap(TickMetrics.OUTPUT, t);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            
+            int maxActive = activeSeries.max();
+            int minActive = activeSeries.min();
+            double avgActive = activeSeries.mean();
+            
+            int maxJailed = jailedSeries.max();
+            int minJailed = jailedSeries.min();
+            double avgJailed = jailedSeries.mean();
+            
+            int maxQuiet = quietSeries.max();
+            int minQuiet = quietSeries.min();
+            double avgQuiet = quietSeries.mean();
+            
+           
+            String statsHeader = "\nStatistics\n";
+            String statsContent = String.format(
+                "Category,Max,Min,Average\n" +
+                "Active,%d,%d,%.2f\n" +
+                "Jailed,%d,%d,%.2f\n" +
+                "Quiet,%d,%d,%.2f\n",
+                maxActive, minActive, avgActive,
+                maxJailed, minJailed, avgJailed,
+                maxQuiet, minQuiet, avgQuiet
+            );
+            
+            writer.write(statsHeader + statsContent);
+            
+            System.out.println("Statistics have been added to simulation_results.csv");
+        } finally {
+            writer.close();
+        }
+    }
+}
@@ -0,0 +1,457 @@
+import engine.WorldSpec;
+import engine.MappedWorld;
+import entity.Agent;
+import entity.Cop;
+import entity.World;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+
+import static entity.AppConfig.*;
+
+/**
+ * Differential check of candidate engines against the reference World (the rules in netlogo.txt).
+ *
+ * Exact candidates must reproduce World tick by tick for the same seed: every agent's position,
+ * active flag and jail term and every cop's position are compared after setup and after each tick,
+ * and the first difference is reported. Fast-forwarding skips the positions but must reproduce the
+ * active, jailed and quiet counts tick by tick. Candidates with different semantics (synchronous
+ * movement, spatial reordering) cannot match run for run; for them the summary statistics of many
+ * seeded runs are compared with a two-sample Kolmogorov-Smirnov test instead.
+ *
+ * Each candidate and the reference also run timedSteps ticks from the same seed, repeatedly after an
+ * untimed warm-up round. A candidate that claims a speedup fails when the median of its speedups is
+ * below its minimum, which is at least 1.0x; for the others (the mapped engine trades speed for
+ * off-heap state, spatial reordering only pays on worlds larger than this one, see
+ * SpatialOrderBenchmark) the speed is only reported. Exits with status 1 on any failure, so it can run in CI.
+ *
+ * -Drebellion.diff.candidates (comma separated, default all), .seeds, .steps, .size, .alpha,
+ * .timedSteps, .repeats, .minSpeedup (for every candidate that claims a speedup, at least 1.0) and
+ * -Drebellion.seed override the defaults.
+ */
+public class DifferentialCheck {
+    private static final int SEEDS = Integer.getInteger("rebellion.diff.seeds", 5);
+    private static final int DISTRIBUTION_SEEDS = Integer.getInteger("rebellion.diff.distributionSeeds", 30);
+    private static final int STEPS = Integer.getInteger("rebellion.diff.steps", 100);
+    private static final int WORLD_SIZE = Integer.getInteger("rebellion.diff.size", 20);
+    private static final double ALPHA = Double.parseDouble(System.getProperty("rebellion.diff.alpha", "0.01"));
+    private static final int TIMED_STEPS = Integer.getInteger("rebellion.diff.timedSteps", 500);
+    private static final int REPEATS = Integer.getInteger("rebellion.diff.repeats", 7);
+    private static final String MIN_SPEEDUP = System.getProperty("rebellion.diff.minSpeedup");
+    private static final long BASE_SEED = Long.getLong("rebellion.seed", System.nanoTime());
+
+    private static final String[] METRICS = {"MeanActive", "MeanJailed", "MeanQuiet", "StabilityIndex", "MaxActive"};
+
+    // One world as seen by the check
+    private interface Engine extends AutoCloseable {
+        void tick();
+
+        int agentCount();
+
+        int copCount();
+
+        int agentX(int a);
+
+        int agentY(int a);
+
+        boolean agentActive(int a);
+
+        int jailTerm(int a);
+
+        int copX(int c);
+
+        int copY(int c);
+
+        int activeCount();
+
+        int jailedCount();
+
+        int quietCount();
+
+        @Override
+        default void close() {
+        }
+    }
+
+    // What a candidate must reproduce of the reference run
+    private enum Agreement {
+        EXACT, COUNTS, DISTRIBUTION
+    }
+
+    /**
+     * A candidate engine, run with the given legitimacy (reference included). minSpeedup is 0 for
+     * candidates that do not claim a speedup, at least 1.0 for those that do
+     */
+    private record Candidate(String name, Agreement agreement, double legitimacy, double minSpeedup,
+                             Function<WorldSpec, Engine> factory) {
+        Candidate {
+            if (minSpeedup != 0 && minSpeedup < 1) {
+                throw new IllegalArgumentException(name + ": a claimed speedup must be at least 1.0x");
+            }
+        }
+    }
+
+    private static final List<Candidate> CANDIDATES = List.of(
+            new Candidate("mapped", Agreement.EXACT, GOVERNMENT_LEGITIMACY, 0, spec -> {
+                try {
+                    Path file = Files.createTempFile("rebellion", ".world");
+                    file.toFile().deleteOnExit();
+                    return of(new MappedWorld(file, WORLD_SIZE, WORLD_SIZE, spec), file);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }),
+            new Candidate("synchronous", Agreement.DISTRIBUTION, GOVERNMENT_LEGITIMACY, 0, spec -> {
+                World world = newWorld(spec);
+                world.setSynchronousMovement(true);
+                return of(world);
+            }),
+            // At legitimacy 0.9 no agent's grievance can exceed the threshold, so every tick is quiescent and
+            // should be skipped; a minimum of 10x catches a fast path that stopped firing
+            new Candidate("fastForward", Agreement.COUNTS, 0.9, 10.0, spec -> {
+                World world = newWorld(spec);
+                world.setFastForward(true);
+                return of(world);
+            }),
+            new Candidate("reorder", Agreement.DISTRIBUTION, GOVERNMENT_LEGITIMACY, 0, spec -> {
+                World world = newWorld(spec);
+                world.setSpatialReorder(50);
+                return of(world);
+            })
+    );
+
+    public static void main(String[] args) {
+        List<String> selected = Arrays.asList(System.getProperty("rebellion.diff.candidates",
+                String.join(",", CANDIDATES.stream().map(Candidate::name).toList())).split(","));
+        if (MIN_SPEEDUP != null && Double.parseDouble(MIN_SPEEDUP) < 1) {
+            throw new IllegalArgumentException("rebellion.diff.minSpeedup must be at least 1.0");
+        }
+        System.out.printf("Reference World vs candidates, %dx%d world, %d steps, base seed %d%n",
+                WORLD_SIZE, WORLD_SIZE, STEPS, BASE_SEED);
+        int failures = 0;
+        for (Candidate candidate : CANDIDATES) {
+            if (selected.contains(candidate.name())) {
+                failures += candidate.agreement() == Agreement.DISTRIBUTION
+                        ? checkDistribution(candidate) : checkExact(candidate);
+                failures += checkSpeed(candidate);
+            }
+        }
+        System.out.println(failures == 0 ? "PASS" : "FAIL (" + failures + ")");
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    private static int checkExact(Candidate candidate) {
+        int failures = 0;
+        boolean counts = candidate.agreement() == Agreement.COUNTS;
+        for (int s = 0; s < SEEDS; s++) {
+            long seed = BASE_SEED + s;
+            WorldSpec spec = spec(seed, candidate.legitimacy());
+            String difference;
+            try (Engine reference = of(newWorld(spec)); Engine engine = candidate.factory().apply(spec)) {
+                difference = counts ? compareCounts(reference, engine) : compare(reference, engine);
+                for (int tick = 1; tick <= STEPS && difference == null; tick++) {
+                    reference.tick();
+                    engine.tick();
+                    difference = counts ? compareCounts(reference, engine) : compare(reference, engine);
+                    if (difference != null) {
+                        difference = "tick " + tick + ": " + difference;
+                    }
+                }
+            }
+            if (difference != null) {
+                System.out.printf("  %-12s seed %d differs at %s%n", candidate.name(), seed, difference);
+                failures++;
+            }
+        }
+        System.out.printf("%-12s %-9s %d/%d seeds identical%n", candidate.name(), counts ? "counts" : "exact",
+                SEEDS - failures, SEEDS);
+        return failures;
+    }
+
+    // First difference between the two states, or null if they are identical
+    private static String compare(Engine reference, Engine engine) {
+        if (reference.agentCount() != engine.agentCount() || reference.copCount() != engine.copCount()) {
+            return "population " + reference.agentCount() + "/" + reference.copCount()
+                    + " vs " + engine.agentCount() + "/" + engine.copCount();
+        }
+        for (int a = 0; a < reference.agentCount(); a++) {
+            if (reference.agentX(a) != engine.agentX(a) || reference.agentY(a) != engine.agentY(a)) {
+                return "agent " + a + " at (" + reference.agentX(a) + "," + reference.agentY(a)
+                        + ") vs (" + engine.agentX(a) + "," + engine.agentY(a) + ")";
+            }
+            if (reference.agentActive(a) != engine.agentActive(a)) {
+                return "agent " + a + " active " + reference.agentActive(a) + " vs " + engine.agentActive(a);
+            }
+            if (reference.jailTerm(a) != engine.jailTerm(a)) {
+                return "agent " + a + " jail term " + reference.jailTerm(a) + " vs " + engine.jailTerm(a);
+            }
+        }
+        for (int c = 0; c < reference.copCount(); c++) {
+            if (reference.copX(c) != engine.copX(c) || reference.copY(c) != engine.copY(c)) {
+                return "cop " + c + " at (" + reference.copX(c) + "," + reference.copY(c)
+                        + ") vs (" + engine.copX(c) + "," + engine.copY(c) + ")";
+            }
+        }
+        return compareCounts(reference, engine);
+    }
+
+    // First difference between the active, jailed and quiet counts, or null if they are identical
+    private static String compareCounts(Engine reference, Engine engine) {
+        if (reference.activeCount() != engine.activeCount() || reference.jailedCount() != engine.jailedCount()
+                || reference.quietCount() != engine.quietCount()) {
+            return "counts " + reference.activeCount() + "/" + reference.jailedCount() + "/" + reference.quietCount()
+                    + " vs " + engine.activeCount() + "/" + engine.jailedCount() + "/" + engine.quietCount();
+        }
+        return null;
+    }
+
+    private static int checkDistribution(Candidate candidate) {
+        double[][] reference = new double[METRICS.length][DISTRIBUTION_SEEDS];
+        double[][] results = new double[METRICS.length][DISTRIBUTION_SEEDS];
+        for (int s = 0; s < DISTRIBUTION_SEEDS; s++) {
+            WorldSpec spec = spec(BASE_SEED + s, candidate.legitimacy());
+            try (Engine engine = of(newWorld(spec))) {
+                summarize(engine, reference, s);
+            }
+            try (Engine engine = candidate.factory().apply(spec)) {
+                summarize(engine, results, s);
+            }
+        }
+        // Bonferroni: each metric is tested at alpha / number of metrics
+        double alpha = ALPHA / METRICS.length;
+        int failures = 0;
+        StringBuilder line = new StringBuilder();
+        for (int m = 0; m < METRICS.length; m++) {
+            double p = kolmogorovSmirnov(reference[m], results[m]);
+            line.append(String.format(" %s p=%.3f", METRICS[m], p));
+            if (p < alpha) {
+                failures++;
+            }
+        }
+        System.out.printf("%-12s ks        %d seeds,%s%n", candidate.name(), DISTRIBUTION_SEEDS, line);
+        return failures;
+    }
+
+    // Same statistics as the summary.csv columns of ParameterExplorer
+    private static void summarize(Engine engine, double[][] results, int run) {
+        IntSeries active = new IntSeries(), jailed = new IntSeries(), quiet = new IntSeries();
+        for (int step = 0; step < STEPS; step++) {
+            engine.tick();
+            active.add(engine.activeCount());
+            jailed.add(engine.jailedCount());
+            quiet.add(engine.quietCount());
+        }
+        double[] values = {active.mean(), jailed.mean(), quiet.mean(), active.stdDev(), active.max()};
+        for (int m = 0; m < METRICS.length; m++) {
+            results[m][run] = values[m];
+        }
+    }
+
+    /**
+     * p-value of the two-sample Kolmogorov-Smirnov test (asymptotic distribution with the
+     * small-sample correction of Stephens)
+     */
+    private static double kolmogorovSmirnov(double[] a, double[] b) {
+        double[] x = a.clone(), y = b.clone();
+        Arrays.sort(x);
+        Arrays.sort(y);
+        int i = 0, j = 0;
+        double d = 0;
+        while (i < x.length && j < y.length) {
+            double v = Math.min(x[i], y[j]);
+            while (i < x.length && x[i] == v) {
+                i++;
+            }
+            while (j < y.length && y[j] == v) {
+                j++;
+            }
+            d = Math.max(d, Math.abs((double) i / x.length - (double) j / y.length));
+        }
+        double n = Math.sqrt((double) x.length * y.length / (x.length + y.length));
+        double lambda = (n + 0.12 + 0.11 / n) * d;
+        if (lambda < 0.2) {
+            return 1;
+        }
+        double p = 0;
+        for (int k = 1; k <= 100; k++) {
+            p += (k % 2 == 1 ? 2 : -2) * Math.exp(-2.0 * k * k * lambda * lambda);
+        }
+        return Math.max(0, Math.min(1, p));
+    }
+
+    // Median speedup over REPEATS timed rounds; round 0 warms up the JIT for both engines and is not counted
+    private static int checkSpeed(Candidate candidate) {
+        double[] speedups = new double[REPEATS];
+        for (int r = 0; r <= REPEATS; r++) {
+            WorldSpec spec = spec(BASE_SEED + r, candidate.legitimacy());
+            try (Engine reference = of(newWorld(spec)); Engine engine = candidate.factory().apply(spec)) {
+                // Alternate which engine runs first, so neither always inherits the other's warm caches
+                long referenceNanos, candidateNanos;
+                if (r % 2 == 0) {
+                    referenceNanos = time(reference);
+                    candidateNanos = time(engine);
+                } else {
+                    candidateNanos = time(engine);
+                    referenceNanos = time(reference);
+                }
+                if (r > 0) {
+                    speedups[r - 1] = (double) referenceNanos / Math.max(1, candidateNanos);
+                }
+            }
+        }
+        Arrays.sort(speedups);
+        double speedup = speedups[REPEATS / 2];
+        String range = String.format("%.2fx the reference (median of %d, %.2f-%.2f", speedup, REPEATS,
+                speedups[0], speedups[REPEATS - 1]);
+        if (candidate.minSpeedup() == 0) {
+            System.out.printf("%-12s speed     %s, no speedup claimed)%n", candidate.name(), range);
+            return 0;
+        }
+        double minSpeedup = MIN_SPEEDUP != null ? Double.parseDouble(MIN_SPEEDUP) : candidate.minSpeedup();
+        boolean slow = speedup < minSpeedup;
+        System.out.printf("%-12s speed     %s, minimum %.2fx)%s%n", candidate.name(), range, minSpeedup,
+                slow ? " SLOW" : "");
+        return slow ? 1 : 0;
+    }
+
+    private static long time(Engine engine) {
+        long start = System.nanoTime();
+        for (int tick = 0; tick < TIMED_STEPS; tick++) {
+            engine.tick();
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static WorldSpec spec(long seed, double legitimacy) {
+        return new WorldSpec(seed, INITIAL_AGENT_DENSITY, INITIAL_COP_DENSITY, K, THRESHOLD, legitimacy);
+    }
+
+    private static World newWorld(WorldSpec spec) {
+        World world = new World(WORLD_SIZE, WORLD_SIZE, spec.seed());
+        world.setup(spec.agentDensity(), spec.copDensity(), spec.k(), spec.threshold(), spec.legitimacy());
+        return world;
+    }
+
+    private static Engine of(World world) {
+        List<Agent> agents = world.getAgents();
+        List<Cop> cops = world.getCops();
+        return new Engine() {
+            public void tick() {
+                world.tick();
+            }
+
+            public int agentCount() {
+                return agents.size();
+            }
+
+            public int copCount() {
+                return cops.size();
+            }
+
+            public int agentX(int a) {
+                return agents.get(a).getLocation().getX();
+            }
+
+            public int agentY(int a) {
+                return agents.get(a).getLocation().getY();
+            }
+
+            public boolean agentActive(int a) {
+                return agents.get(a).isActive();
+            }
+
+            public int jailTerm(int a) {
+                return agents.get(a).getJail_term();
+            }
+
+            public int copX(int c) {
+                return cops.get(c).getLocation().getX();
+            }
+
+            public int copY(int c) {
+                return cops.get(c).getLocation().getY();
+            }
+
+            public int activeCount() {
+                return world.getActiveAgentCount();
+            }
+
+            public int jailedCount() {
+                return world.getJailedAgentCount();
+            }
+
+            public int quietCount() {
+                return world.getQuietAgentCount();
+            }
+        };
+    }
+
+    // Closing the engine unmaps the world and deletes its file
+    private static Engine of(MappedWorld world, Path file) {
+        return new Engine() {
+            public void tick() {
+                world.tick();
+            }
+
+            public void close() {
+                try {
+                    world.close();
+                    Files.deleteIfExists(file);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+
+            public int agentCount() {
+                return world.getAgentCount();
+            }
+
+            public int copCount() {
+                return world.getCopsCount();
+            }
+
+            public int agentX(int a) {
+                return world.getAgentX(a);
+            }
+
+            public int agentY(int a) {
+                return world.getAgentY(a);
+            }
+
+            public boolean agentActive(int a) {
+                return world.isAgentActive(a);
+            }
+
+            public int jailTerm(int a) {
+                return world.getJailTerm(a);
+            }
+
+            public int copX(int c) {
+                return world.getCopX(c);
+            }
+
+            public int copY(int c) {
+                return world.getCopY(c);
+            }
+
+            public int activeCount() {
+                return world.getActiveAgentCount();
+            }
+
+            public int jailedCount() {
+                return world.getJailedAgentCount();
+            }
+
+            public int quietCount() {
+                return world.getQuietAgentCount();
+            }
+        };
+    }
+}
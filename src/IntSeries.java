@@ -0,0 +1,277 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Bounded-memory time series of ints (one value per tick).
+ * The most recent samples are kept at full resolution in a ring that grows up to recentCapacity;
+ * older samples are folded into buckets (min/max/mean), and when the buckets run out adjacent
+ * pairs are merged, so each tier covers twice the time of the one after it.
+ * Count, min, max, mean and standard deviation are exact over every sample ever added.
+ */
+public class IntSeries {
+    private static final int DEFAULT_RECENT = 4096;
+    private static final int DEFAULT_BUCKETS = 1024;
+
+    // Recent samples at full resolution: ring of the last recentCount samples
+    private final int recentCapacity;
+    private int[] recent = new int[64];
+    private int recentStart = 0;
+    private int recentCount = 0;
+
+    // Older samples, oldest bucket first; every bucket covers bucketSpan samples except the open last one
+    private final int[] bucketMin, bucketMax, bucketCount;
+    private final long[] bucketSum;
+    private int buckets = 0;
+    private int bucketSpan = 1;
+
+    // Exact aggregates
+    private long size = 0;
+    private int min = 0, max = 0;
+    private double mean = 0, m2 = 0;
+
+    public IntSeries() {
+        this(DEFAULT_RECENT, DEFAULT_BUCKETS);
+    }
+
+    public IntSeries(int recentCapacity, int bucketCapacity) {
+        this.recentCapacity = recentCapacity;
+        int capacity = Math.max(2, bucketCapacity + (bucketCapacity & 1));
+        this.bucketMin = new int[capacity];
+        this.bucketMax = new int[capacity];
+        this.bucketCount = new int[capacity];
+        this.bucketSum = new long[capacity];
+    }
+
+    public void add(int value) {
+        if (size == 0) {
+            min = value;
+            max = value;
+        } else {
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+        size++;
+        double delta = value - mean;
+        mean += delta / size;
+        m2 += delta * (value - mean);
+
+        if (recentCount == recent.length && recentCount < recentCapacity) {
+            int[] grown = new int[Math.min(recentCapacity, recent.length * 2)];
+            for (int i = 0; i < recentCount; i++) {
+                grown[i] = recent[(recentStart + i) % recent.length];
+            }
+            recent = grown;
+            recentStart = 0;
+        }
+        if (recentCount == recent.length) {
+            // Ring is full: the oldest recent sample moves into the buckets
+            fold(recent[recentStart]);
+            recent[recentStart] = value;
+            recentStart = (recentStart + 1) % recent.length;
+        } else {
+            recent[(recentStart + recentCount) % recent.length] = value;
+            recentCount++;
+        }
+    }
+
+    private void fold(int value) {
+        if (buckets == 0 || bucketCount[buckets - 1] == bucketSpan) {
+            if (buckets == bucketCount.length) {
+                mergePairs();
+            }
+            bucketMin[buckets] = value;
+            bucketMax[buckets] = value;
+            bucketCount[buckets] = 0;
+            bucketSum[buckets] = 0;
+            buckets++;
+        }
+        int b = buckets - 1;
+        bucketMin[b] = Math.min(bucketMin[b], value);
+        bucketMax[b] = Math.max(bucketMax[b], value);
+        bucketCount[b]++;
+        bucketSum[b] += value;
+    }
+
+    // Halve the number of buckets by merging neighbours, doubling the span of each
+    private void mergePairs() {
+        for (int i = 0; i < buckets / 2; i++) {
+            int a = 2 * i, b = 2 * i + 1;
+            bucketMin[i] = Math.min(bucketMin[a], bucketMin[b]);
+            bucketMax[i] = Math.max(bucketMax[a], bucketMax[b]);
+            bucketCount[i] = bucketCount[a] + bucketCount[b];
+            bucketSum[i] = bucketSum[a] + bucketSum[b];
+        }
+        buckets /= 2;
+        bucketSpan *= 2;
+    }
+
+    /**
+     * Write the whole state (stored points and exact aggregates), to be restored by readFrom
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(recentCapacity);
+        out.writeInt(bucketCount.length);
+        out.writeInt(recentCount);
+        for (int i = 0; i < recentCount; i++) {
+            out.writeInt(recent[(recentStart + i) % recent.length]);
+        }
+        out.writeInt(buckets);
+        out.writeInt(bucketSpan);
+        for (int i = 0; i < buckets; i++) {
+            out.writeInt(bucketMin[i]);
+            out.writeInt(bucketMax[i]);
+            out.writeInt(bucketCount[i]);
+            out.writeLong(bucketSum[i]);
+        }
+        out.writeLong(size);
+        out.writeInt(min);
+        out.writeInt(max);
+        out.writeDouble(mean);
+        out.writeDouble(m2);
+    }
+
+    public static IntSeries readFrom(DataInput in) throws IOException {
+        int recentCapacity = in.readInt(), bucketCapacity = in.readInt(), recentCount = in.readInt();
+        if (recentCapacity < 1 || bucketCapacity < 2 || (bucketCapacity & 1) != 0
+                || recentCount < 0 || recentCount > Math.max(64, recentCapacity)) {
+            throw new IOException("Corrupt series header");
+        }
+        IntSeries series = new IntSeries(recentCapacity, bucketCapacity);
+        series.recent = new int[Math.max(64, recentCount)];
+        for (int i = 0; i < recentCount; i++) {
+            series.recent[i] = in.readInt();
+        }
+        series.recentCount = recentCount;
+        series.buckets = in.readInt();
+        series.bucketSpan = in.readInt();
+        if (series.buckets < 0 || series.buckets > bucketCapacity || series.bucketSpan < 1) {
+            throw new IOException("Corrupt series buckets");
+        }
+        for (int i = 0; i < series.buckets; i++) {
+            series.bucketMin[i] = in.readInt();
+            series.bucketMax[i] = in.readInt();
+            series.bucketCount[i] = in.readInt();
+            series.bucketSum[i] = in.readLong();
+        }
+        series.size = in.readLong();
+        series.min = in.readInt();
+        series.max = in.readInt();
+        series.mean = in.readDouble();
+        series.m2 = in.readDouble();
+        return series;
+    }
+
+    /**
+     * Number of samples ever added
+     */
+    public int size() {
+        return (int) size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    // 0 when empty, like the stream-based statistics did
+    public int min() {
+        return min;
+    }
+
+    public int max() {
+        return max;
+    }
+
+    public double mean() {
+        return mean;
+    }
+
+    /**
+     * Population standard deviation
+     */
+    public double stdDev() {
+        return size == 0 ? 0 : Math.sqrt(m2 / size);
+    }
+
+    /**
+     * Number of stored points: one per bucket plus one per recent sample
+     */
+    public int points() {
+        return buckets + recentCount;
+    }
+
+    /**
+     * x (sample index) of stored point i; a bucket is placed at the centre of the samples it covers
+     */
+    public double pointX(int i) {
+        long folded = size - recentCount;
+        if (i < buckets) {
+            return (double) i * bucketSpan + (bucketCount[i] - 1) / 2.0;
+        }
+        return folded + (i - buckets);
+    }
+
+    /**
+     * y of stored point i: the sample itself, or the mean of a bucket
+     */
+    public double pointY(int i) {
+        if (i < buckets) {
+            return (double) bucketSum[i] / bucketCount[i];
+        }
+        return recent[(recentStart + i - buckets) % recent.length];
+    }
+
+    /**
+     * Largest-triangle-three-buckets summary of the stored points.
+     * Writes at most threshold points into xs/ys (both at least threshold long) and returns how many.
+     */
+    public int lttb(int threshold, double[] xs, double[] ys) {
+        int n = points();
+        if (threshold >= n || threshold < 3) {
+            int count = Math.min(n, Math.max(threshold, 0));
+            for (int i = 0; i < count; i++) {
+                xs[i] = pointX(i);
+                ys[i] = pointY(i);
+            }
+            return count;
+        }
+        double every = (double) (n - 2) / (threshold - 2);
+        int a = 0;
+        int out = 0;
+        xs[out] = pointX(0);
+        ys[out++] = pointY(0);
+        for (int i = 0; i < threshold - 2; i++) {
+            // Average of the next bucket is the third vertex of the triangle
+            int nextStart = (int) ((i + 1) * every) + 1;
+            int nextEnd = Math.min((int) ((i + 2) * every) + 1, n);
+            double avgX = 0, avgY = 0;
+            for (int j = nextStart; j < nextEnd; j++) {
+                avgX += pointX(j);
+                avgY += pointY(j);
+            }
+            int nextLength = Math.max(1, nextEnd - nextStart);
+            avgX /= nextLength;
+            avgY /= nextLength;
+
+            // Pick the point of the current bucket forming the largest triangle with a and the average
+            int start = (int) (i * every) + 1;
+            int end = (int) ((i + 1) * every) + 1;
+            double ax = pointX(a), ay = pointY(a);
+            double maxArea = -1;
+            int chosen = start;
+            for (int j = start; j < end; j++) {
+                double area = Math.abs((ax - avgX) * (pointY(j) - ay) - (ax - pointX(j)) * (avgY - ay));
+                if (area > maxArea) {
+                    maxArea = area;
+                    chosen = j;
+                }
+            }
+            xs[out] = pointX(chosen);
+            ys[out++] = pointY(chosen);
+            a = chosen;
+        }
+        xs[out] = pointX(n - 1);
+        ys[out++] = pointY(n - 1);
+        return out;
+    }
+}
@@ -1,18 +1,27 @@
+import engine.WorldSpec;
+import engine.MappedWorld;
 import entity.World;
+import metrics.ChartRenderEvent;
 import static entity.AppConfig.*;
 
 import javax.swing.*;
 import java.awt.*;
 import java.util.List;
-import java.util.ArrayList;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.PrintWriter;
-import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Random;
 
 public class Main {
     public static void main(String[] args) {
+        // Headless off-heap mode: --mapped <file> <size> [steps] runs a size x size world stored in a
+        // memory-mapped file, which StateInspector can watch from another process; meant for worlds too
+        // large for the heap (see MappedWorld)
+        if (args.length >= 3 && args[0].equals("--mapped")) {
+            runMapped(Paths.get(args[1]), Integer.parseInt(args[2]), args.length > 3 ? Integer.parseInt(args[3]) : 200);
+            return;
+        }
+
         // Create world
         World world = new World(40, 40);
 
@@ -25,16 +34,23 @@ public class Main {
             GOVERNMENT_LEGITIMACY
         );
 
-        // Lists to store statistics
-        List<Integer> quietList = new ArrayList<>();
-        List<Integer> jailedList = new ArrayList<>();
-        List<Integer> activeList = new ArrayList<>();
+        // Headless mode: write the world map of every tick as PNG frames instead of opening the GUI
+        if (args.length >= 2 && args[0].equals("--frames")) {
+            try {
+                WorldRaster.exportFrames(world, 200, 8, Paths.get(args[1]));
+            } catch (IOException ex) {
+                System.err.println("Error writing frames: " + ex.getMessage());
+            }
+            return;
+        }
 
         // Create and show chart window
-        SimpleLineChart chartPanel = new SimpleLineChart(quietList, jailedList, activeList);
+        SimpleLineChart chartPanel = new SimpleLineChart();
+        WorldView worldView = new WorldView(world.getWidth(), world.getHeight(), 8);
         JFrame frame = new JFrame("Simulation Result");
         frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
-        frame.add(chartPanel);
+        frame.add(chartPanel, BorderLayout.CENTER);
+        frame.add(worldView, BorderLayout.EAST);
         frame.pack();
         frame.setLocationRelativeTo(null);
         frame.setVisible(true);
@@ -42,112 +58,151 @@ public class Main {
         // Simulation parameters
         int steps = 200; // 
         int delay = 0; // ms per step
+        int frameRate = 30; // max chart repaints per second, independent of simulation speed
+
+        // Output policies: what a consumer does when it falls a full ring behind the simulation. The CSV
+        // and the console report every tick, so they hold the simulation back rather than lose records;
+        // the chart only needs the latest ticks
+        int ringSize = 1024;
+        TickPipeline.Backpressure csvPolicy = TickPipeline.Backpressure.BLOCK;
+        TickPipeline.Backpressure consolePolicy = TickPipeline.Backpressure.BLOCK;
+        TickPipeline.Backpressure chartPolicy = TickPipeline.Backpressure.DROP;
 
         // Create CSV file and write header
+        CsvTickWriter csvWriter;
         try {
-            Files.write(Paths.get("simulation_results.csv"), 
-                "TimeStep,ActiveAgents,JailedAgents,QuietAgents,TotalCops\n".getBytes());
+            csvWriter = new CsvTickWriter(Paths.get("simulation_results.csv"));
         } catch (IOException ex) {
             System.err.println("Error creating CSV file: " + ex.getMessage());
             return;
         }
 
-        // Timer for dynamic update
-        Timer timer = new Timer(delay, e -> {
-            if (quietList.size() < steps) {
-                world.tick();
-                int activeCount = world.getActiveAgentCount();
-                int jailedCount = world.getJailedAgentCount();
-                int quietCount = world.getQuietAgentCount();
-                int copsCount = world.getCopsCount();
+        // Optional per-agent history: -Drebellion.trajectory=<file> records every tick for TrajectoryReader
+        TrajectoryRecorder recorder = null;
+        String trajectory = System.getProperty("rebellion.trajectory");
+        if (trajectory != null) {
+            try {
+                recorder = new TrajectoryRecorder(Paths.get(trajectory), world);
+            } catch (IOException ex) {
+                System.err.println("Error creating trajectory file, not recording: " + ex.getMessage());
+            }
+        }
+        TrajectoryRecorder trajectoryRecorder = recorder;
 
-                // Add to lists
-                quietList.add(quietCount);
-                jailedList.add(jailedCount);
-                activeList.add(activeCount);
+        // The chart picks snapshots up from this buffer once per frame
+        SnapshotBuffer snapshots = new SnapshotBuffer();
 
-                // Print to console
-                System.out.println("Time Step: " + (quietList.size() - 1));
-                world.printStatus();
+        // The simulation thread only publishes per-tick records, the consumers drain them on their own threads
+        TickPipeline pipeline = new TickPipeline(ringSize)
+            .addConsumer("csv", csvPolicy, csvWriter)
+            .addConsumer("console", consolePolicy, Main::printStatus)
+            .addConsumer("chart", chartPolicy, snapshots::publish);
 
-                // Write to CSV
+        Thread simulation = new Thread(() -> {
+            for (int step = 0; step < steps; step++) {
+                world.tick();
+                if (trajectoryRecorder != null) {
+                    try {
+                        trajectoryRecorder.record();
+                    } catch (IOException ex) {
+                        System.err.println("Error writing trajectory: " + ex.getMessage());
+                    }
+                }
+                worldView.capture(world);
+                pipeline.publish(new TickSnapshot(step,
+                    world.getActiveAgentCount(),
+                    world.getJailedAgentCount(),
+                    world.getQuietAgentCount(),
+                    world.getCopsCount()));
+
+                if (delay > 0) {
+                    try {
+                        Thread.sleep(delay);
+                    } catch (InterruptedException ex) {
+                        return;
+                    }
+                }
+            }
+            if (trajectoryRecorder != null) {
                 try {
-                    String line = String.format("%d,%d,%d,%d,%d\n",
-                        quietList.size() - 1,
-                        activeCount,
-                        jailedCount,
-                        quietCount,
-                        copsCount
-                    );
-                    Files.write(Paths.get("simulation_results.csv"), 
-                        line.getBytes(), 
-                        java.nio.file.StandardOpenOption.APPEND);
+                    trajectoryRecorder.close();
                 } catch (IOException ex) {
-                    System.err.println("Error writing to CSV: " + ex.getMessage());
+                    System.err.println("Error closing trajectory file: " + ex.getMessage());
                 }
+            }
+            // Wait for the consumers to drain the ring (the CSV writer appends the statistics on close)
+            pipeline.close();
+            if (Thread.currentThread().isInterrupted()) {
+                return;
+            }
+            System.out.println("Simulation finished.");
+        }, "simulation");
 
+        // Repaint timer on the EDT, capped at frameRate and stopped once the last snapshot is drawn
+        Timer timer = new Timer(1000 / frameRate, e -> {
+            boolean finished = !simulation.isAlive();
+            worldView.refresh();
+            List<TickSnapshot> batch = snapshots.swap();
+            if (!batch.isEmpty()) {
+                chartPanel.append(batch);
                 chartPanel.repaint();
-            } else {
+            } else if (finished) {
                 ((Timer) e.getSource()).stop();
-                System.out.println("Simulation finished.");
-                
-                
-                try {
-                    
-                    int maxActive = activeList.stream().mapToInt(Integer::intValue).max().orElse(0);
-                    int minActive = activeList.stream().mapToInt(Integer::intValue).min().orElse(0);
-                    double avgActive = activeList.stream().mapToInt(Integer::intValue).average().orElse(0);
-                    
-                    int maxJailed = jailedList.stream().mapToInt(Integer::intValue).max().orElse(0);
-                    int minJailed = jailedList.stream().mapToInt(Integer::intValue).min().orElse(0);
-                    double avgJailed = jailedList.stream().mapToInt(Integer::intValue).average().orElse(0);
-                    
-                    int maxQuiet = quietList.stream().mapToInt(Integer::intValue).max().orElse(0);
-                    int minQuiet = quietList.stream().mapToInt(Integer::intValue).min().orElse(0);
-                    double avgQuiet = quietList.stream().mapToInt(Integer::intValue).average().orElse(0);
-                    
-                   
-                    String statsHeader = "\nStatistics\n";
-                    String statsContent = String.format(
-                        "Category,Max,Min,Average\n" +
-                        "Active,%d,%d,%.2f\n" +
-                        "Jailed,%d,%d,%.2f\n" +
-                        "Quiet,%d,%d,%.2f\n",
-                        maxActive, minActive, avgActive,
-                        maxJailed, minJailed, avgJailed,
-                        maxQuiet, minQuiet, avgQuiet
-                    );
-                    
-                    Files.write(Paths.get("simulation_results.csv"), 
-                        (statsHeader + statsContent).getBytes(), 
-                        java.nio.file.StandardOpenOption.APPEND);
-                    
-                    System.out.println("Statistics have been added to simulation_results.csv");
-                } catch (IOException ex) {
-                    System.err.println("Error writing statistics to CSV: " + ex.getMessage());
-                }
             }
         });
+        simulation.start();
         timer.start();
     }
+
+    private static void runMapped(Path file, int size, int steps) {
+        WorldSpec spec = new WorldSpec(new Random().nextLong(), INITIAL_AGENT_DENSITY,
+                INITIAL_COP_DENSITY, K, THRESHOLD, GOVERNMENT_LEGITIMACY);
+        try (MappedWorld world = new MappedWorld(file, size, size, spec)) {
+            for (int step = 0; step < steps; step++) {
+                world.tick();
+                printStatus(new TickSnapshot(step, world.getActiveAgentCount(), world.getJailedAgentCount(),
+                        world.getQuietAgentCount(), world.getCopsCount()));
+            }
+        } catch (IOException ex) {
+            System.err.println("Error mapping world file: " + ex.getMessage());
+        }
+    }
+
+    // Same layout as World.printStatus, from a published snapshot
+    private static void printStatus(TickSnapshot s) {
+        System.out.println("Time Step: " + s.tick());
+        System.out.println("=== Simulation Status ===");
+        System.out.println("Active Agents: " + s.active());
+        System.out.println("Jailed Agents: " + s.jailed());
+        System.out.println("Quiet Agents: " + s.quiet());
+        System.out.println("Number of Cops: " + s.cops());
+        System.out.println("================\n");
+    }
 }
 
 class SimpleLineChart extends JPanel {
-    private final List<Integer> quiet, jailed, active;
-    public SimpleLineChart(List<Integer> quiet, List<Integer> jailed, List<Integer> active) {
-        this.quiet = quiet;
-        this.jailed = jailed;
-        this.active = active;
+    // History kept by the chart itself (EDT only), bounded and with exact running max
+    private final IntSeries quiet = new IntSeries(), jailed = new IntSeries(), active = new IntSeries();
+    private double[] xs = new double[0], ys = new double[0];
+
+    public SimpleLineChart() {
         setPreferredSize(new Dimension(600, 400));
     }
+
+    public void append(List<TickSnapshot> batch) {
+        for (TickSnapshot s : batch) {
+            quiet.add(s.quiet());
+            jailed.add(s.jailed());
+            active.add(s.active());
+        }
+    }
+
     @Override
     protected void paintComponent(Graphics g) {
+        ChartRenderEvent event = ChartRenderEvent.isRecorded() ? ChartRenderEvent.begin("LiveLineChart") : null;
         super.paintComponent(g);
         int w = getWidth(), h = getHeight();
-        int max = Math.max(Math.max(
-            quiet.stream().max(Integer::compareTo).orElse(1),
-            jailed.stream().max(Integer::compareTo).orElse(1)),
-            active.stream().max(Integer::compareTo).orElse(1));
+        int max = Math.max(1, Math.max(Math.max(quiet.max(), jailed.max()), active.max()));
         // Axes
         g.setColor(Color.DARK_GRAY);
         g.drawLine(40, h-40, w-20, h-40); // x-axis
@@ -165,16 +220,27 @@ class SimpleLineChart extends JPanel {
         g.setColor(Color.GREEN); g.drawString("quiet", w-80, 30);
         g.setColor(Color.BLACK); g.drawString("jailed", w-80, 45);
         g.setColor(Color.RED);   g.drawString("active", w-80, 60);
+        if (event != null) {
+            event.end(quiet.size());
+        }
     }
-    private void drawLine(Graphics g, List<Integer> data, Color color, int w, int h, int max) {
+
+    // Polyline through the largest-triangle-three-buckets summary, one point per pixel column at most
+    private void drawLine(Graphics g, IntSeries data, Color color, int w, int h, int max) {
         g.setColor(color);
-        int n = data.size();
+        int columns = Math.max(3, w - 60);
+        if (xs.length < columns) {
+            xs = new double[columns];
+            ys = new double[columns];
+        }
+        int n = data.lttb(columns, xs, ys);
+        double span = Math.max(1, data.size() - 1);
         for (int i = 1; i < n; i++) {
-            int x1 = 40 + (w-60) * (i-1) / (n-1);
-            int y1 = h-40 - (h-60) * data.get(i-1) / max;
-            int x2 = 40 + (w-60) * i / (n-1);
-            int y2 = h-40 - (h-60) * data.get(i) / max;
+            int x1 = 40 + (int) ((w-60) * xs[i-1] / span);
+            int y1 = h-40 - (int) ((h-60) * ys[i-1] / max);
+            int x2 = 40 + (int) ((w-60) * xs[i] / span);
+            int y2 = h-40 - (int) ((h-60) * ys[i] / max);
             g.drawLine(x1, y1, x2, y2);
         }
     }
-}
\ No newline at end of file
+}
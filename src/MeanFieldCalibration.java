@@ -0,0 +1,180 @@
+import engine.MeanField;
+import engine.WorldSpec;
+import entity.World;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static entity.AppConfig.*;
+
+/**
+ * Calibration report of the approximate MeanField engine against the exact engine (World). Over a grid of legitimacy x cop density, the per-run statistics of several
+ * seeded replicates are averaged and compared with one mean-field run of the same parameters. For
+ * each metric the report gives the mean and largest absolute error over the grid and the Spearman
+ * rank correlation across the grid, which is what matters when the mean field only screens a sweep
+ * for the regions worth simulating exactly. Per-point values go to
+ * parameter_exploration_results/meanfield_calibration.csv.
+ *
+ * -Drebellion.calibration.legitimacy and .copDensity (comma separated), .replicates, .steps, .size,
+ * .block and -Drebellion.seed override the defaults.
+ */
+public class MeanFieldCalibration {
+    private static final double[] LEGITIMACY = doubles(System.getProperty("rebellion.calibration.legitimacy",
+            "0.5,0.6,0.7,0.75,0.8,0.82,0.85,0.9"));
+    private static final double[] COP_DENSITY = doubles(System.getProperty("rebellion.calibration.copDensity",
+            "0.02,0.04,0.06,0.08"));
+    private static final int REPLICATES = Integer.getInteger("rebellion.calibration.replicates", 8);
+    private static final int STEPS = Integer.getInteger("rebellion.calibration.steps", 100);
+    private static final int WORLD_SIZE = Integer.getInteger("rebellion.calibration.size", 40);
+    private static final int BLOCK = Integer.getInteger("rebellion.calibration.block", 10);
+    // Replicate r of every grid point runs with seed BASE_SEED + r
+    private static final long BASE_SEED = Long.getLong("rebellion.seed", System.nanoTime());
+
+    private static final String[] METRICS = {"MeanActive", "MeanJailed", "MeanQuiet", "StabilityIndex", "MaxActive"};
+
+    public static void main(String[] args) {
+        int points = LEGITIMACY.length * COP_DENSITY.length;
+        double[][] exact = new double[METRICS.length][points];
+        double[][] approximate = new double[METRICS.length][points];
+        long exactNanos = 0, approximateNanos = 0;
+
+        try {
+            Files.createDirectories(Paths.get("parameter_exploration_results"));
+        } catch (IOException e) {
+            System.err.println("Error creating results directory: " + e.getMessage());
+            return;
+        }
+        try (PrintWriter writer = new PrintWriter(new FileWriter("parameter_exploration_results/meanfield_calibration.csv"))) {
+            StringBuilder header = new StringBuilder("Legitimacy,CopDensity");
+            for (String metric : METRICS) {
+                header.append(',').append(metric).append(',').append("MeanField").append(metric);
+            }
+            writer.println(header);
+
+            int p = 0;
+            for (double legitimacy : LEGITIMACY) {
+                for (double copDensity : COP_DENSITY) {
+                    System.out.printf("Point %d/%d: leg=%.2f, cop=%.2f%n", p + 1, points, legitimacy, copDensity);
+                    long start = System.nanoTime();
+                    runExact(legitimacy, copDensity, exact, p);
+                    long middle = System.nanoTime();
+                    runMeanField(legitimacy, copDensity, approximate, p);
+                    approximateNanos += System.nanoTime() - middle;
+                    exactNanos += middle - start;
+
+                    StringBuilder line = new StringBuilder(String.format("%.2f,%.2f", legitimacy, copDensity));
+                    for (int m = 0; m < METRICS.length; m++) {
+                        line.append(String.format(",%.4f,%.4f", exact[m][p], approximate[m][p]));
+                    }
+                    writer.println(line);
+                    writer.flush();
+                    p++;
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error writing calibration file: " + e.getMessage());
+            return;
+        }
+
+        System.out.printf("%n%d grid points, %d replicates, %d steps, %dx%d world, %dx%d blocks%n",
+                points, REPLICATES, STEPS, WORLD_SIZE, WORLD_SIZE, BLOCK, BLOCK);
+        System.out.printf("%-16s %12s %12s %10s%n", "Metric", "Mean |err|", "Max |err|", "Spearman");
+        for (int m = 0; m < METRICS.length; m++) {
+            double sum = 0, max = 0;
+            for (int p = 0; p < points; p++) {
+                double error = Math.abs(exact[m][p] - approximate[m][p]);
+                sum += error;
+                max = Math.max(max, error);
+            }
+            System.out.printf("%-16s %12.2f %12.2f %10.3f%n", METRICS[m], sum / points, max,
+                    spearman(exact[m], approximate[m]));
+        }
+        // Per run: the exact engine simulates REPLICATES worlds per point, the mean field one
+        System.out.printf("Time per run: exact %.2f ms, mean field %.2f ms (%.0fx faster)%n",
+                exactNanos / 1e6 / points / REPLICATES, approximateNanos / 1e6 / points,
+                (double) exactNanos / REPLICATES / Math.max(1, approximateNanos));
+    }
+
+    // Replicate average of the per-run statistics
+    private static void runExact(double legitimacy, double copDensity, double[][] results, int point) {
+        for (int r = 0; r < REPLICATES; r++) {
+            World world = new World(WORLD_SIZE, WORLD_SIZE, BASE_SEED + r);
+            world.setup(INITIAL_AGENT_DENSITY, copDensity, K, THRESHOLD, legitimacy);
+            world.setFastForward(true);
+            IntSeries active = new IntSeries(), jailed = new IntSeries(), quiet = new IntSeries();
+            for (int step = 0; step < STEPS; step++) {
+                world.tick();
+                active.add(world.getActiveAgentCount());
+                jailed.add(world.getJailedAgentCount());
+                quiet.add(world.getQuietAgentCount());
+            }
+            double[] values = statistics(active, jailed, quiet);
+            for (int m = 0; m < METRICS.length; m++) {
+                results[m][point] += values[m] / REPLICATES;
+            }
+        }
+    }
+
+    private static void runMeanField(double legitimacy, double copDensity, double[][] results, int point) {
+        MeanField model = new MeanField(WORLD_SIZE, WORLD_SIZE, BLOCK,
+                new WorldSpec(BASE_SEED, INITIAL_AGENT_DENSITY, copDensity, K, THRESHOLD, legitimacy));
+        IntSeries active = new IntSeries(), jailed = new IntSeries(), quiet = new IntSeries();
+        for (int step = 0; step < STEPS; step++) {
+            model.tick();
+            active.add(model.getActiveAgentCount());
+            jailed.add(model.getJailedAgentCount());
+            quiet.add(model.getQuietAgentCount());
+        }
+        double[] values = statistics(active, jailed, quiet);
+        for (int m = 0; m < METRICS.length; m++) {
+            results[m][point] = values[m];
+        }
+    }
+
+    private static double[] statistics(IntSeries active, IntSeries jailed, IntSeries quiet) {
+        return new double[]{active.mean(), jailed.mean(), quiet.mean(), active.stdDev(), active.max()};
+    }
+
+    // Pearson correlation of the ranks (ties share their average rank); 0 when either side is constant
+    private static double spearman(double[] a, double[] b) {
+        double[] ra = ranks(a), rb = ranks(b);
+        double ma = Arrays.stream(ra).average().orElse(0), mb = Arrays.stream(rb).average().orElse(0);
+        double cov = 0, va = 0, vb = 0;
+        for (int i = 0; i < a.length; i++) {
+            cov += (ra[i] - ma) * (rb[i] - mb);
+            va += (ra[i] - ma) * (ra[i] - ma);
+            vb += (rb[i] - mb) * (rb[i] - mb);
+        }
+        return va == 0 || vb == 0 ? 0 : cov / Math.sqrt(va * vb);
+    }
+
+    private static double[] ranks(double[] values) {
+        Integer[] order = new Integer[values.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (x, y) -> Double.compare(values[x], values[y]));
+        double[] ranks = new double[values.length];
+        for (int i = 0; i < order.length; ) {
+            int j = i;
+            while (j + 1 < order.length && values[order[j + 1]] == values[order[i]]) {
+                j++;
+            }
+            for (int t = i; t <= j; t++) {
+                ranks[order[t]] = (i + j) / 2.0 + 1;
+            }
+            i = j + 1;
+        }
+        return ranks;
+    }
+
+    private static double[] doubles(String list) {
+        return Arrays.stream(list.split(",")).map(String::trim).mapToDouble(Double::parseDouble).toArray();
+    }
+}
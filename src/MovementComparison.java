@@ -0,0 +1,107 @@
+import entity.World;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import static entity.AppConfig.*;
+
+/**
+ * Statistical comparison of sequential (NetLogo-faithful) and synchronous movement.
+ * Runs the same replicate seeds in both modes with the baseline parameters and compares the
+ * per-run statistics with Welch's t-test. Per-run values go to movement_comparison.csv.
+ *
+ * Synchronous movement (World.setSynchronousMovement) is a different model, not an optimization:
+ * runs with the same seed differ between the modes. Sequentially, agents then cops move one at a
+ * time and each sees the cells vacated or taken before it. Synchronously, every agent not in jail
+ * (if MOVEMENT) and every cop picks a uniformly random cell within VISION that was free of cops and
+ * agents not in jail at the start of the phase; a cell claimed by several turtles goes to the one
+ * with the lowest priority hashed from (seed, tick, turtle), and the others stay. Picks and
+ * priorities are pure functions of (seed, tick, turtle), so they do not depend on the number of
+ * threads, and movement draws nothing from the world's Random.
+ *
+ * -Drebellion.compare.replicates, .steps and .size override the defaults; -Drebellion.seed fixes the seeds.
+ */
+public class MovementComparison {
+    private static final int REPLICATES = Integer.getInteger("rebellion.compare.replicates", 10);
+    private static final int STEPS = Integer.getInteger("rebellion.compare.steps", 100);
+    private static final int WORLD_SIZE = Integer.getInteger("rebellion.compare.size", 40);
+    // Replicate r runs with seed BASE_SEED + r in both modes
+    private static final long BASE_SEED = Long.getLong("rebellion.seed", System.nanoTime());
+
+    private static final String[] METRICS = {"MeanActive", "MeanJailed", "MeanQuiet", "StabilityIndex", "MaxActive"};
+
+    public static void main(String[] args) {
+        double[][] sequential = new double[METRICS.length][REPLICATES];
+        double[][] synchronous = new double[METRICS.length][REPLICATES];
+
+        try (PrintWriter writer = new PrintWriter(new FileWriter("movement_comparison.csv"))) {
+            writer.println("Mode,Replicate,Seed," + String.join(",", METRICS));
+            for (int r = 0; r < REPLICATES; r++) {
+                long seed = BASE_SEED + r;
+                System.out.printf("Replicate %d/%d, seed=%d%n", r + 1, REPLICATES, seed);
+                run(false, seed, sequential, r, writer);
+                run(true, seed, synchronous, r, writer);
+            }
+        } catch (IOException e) {
+            System.err.println("Error writing comparison file: " + e.getMessage());
+            return;
+        }
+
+        System.out.printf("%n%d replicates, %d steps, %dx%d world%n", REPLICATES, STEPS, WORLD_SIZE, WORLD_SIZE);
+        System.out.printf("%-16s %20s %20s %9s %7s%n", "Metric", "Sequential", "Synchronous", "Welch t", "df");
+        for (int m = 0; m < METRICS.length; m++) {
+            double m1 = mean(sequential[m]), m2 = mean(synchronous[m]);
+            double v1 = variance(sequential[m], m1) / REPLICATES, v2 = variance(synchronous[m], m2) / REPLICATES;
+            double t = v1 + v2 == 0 ? 0 : (m1 - m2) / Math.sqrt(v1 + v2);
+            // Welch-Satterthwaite degrees of freedom
+            double df = v1 + v2 == 0 ? REPLICATES - 1
+                    : (v1 + v2) * (v1 + v2) / (v1 * v1 / (REPLICATES - 1) + v2 * v2 / (REPLICATES - 1));
+            System.out.printf("%-16s %9.2f +- %-7.2f %9.2f +- %-7.2f %9.3f %7.1f%n", METRICS[m],
+                    m1, Math.sqrt(variance(sequential[m], m1)), m2, Math.sqrt(variance(synchronous[m], m2)), t, df);
+        }
+        System.out.println("|t| above about 2 means the modes differ at roughly the 5% level");
+    }
+
+    private static void run(boolean synchronousMovement, long seed, double[][] results, int replicate, PrintWriter writer) {
+        World world = new World(WORLD_SIZE, WORLD_SIZE, seed);
+        world.setup(INITIAL_AGENT_DENSITY, INITIAL_COP_DENSITY, K, THRESHOLD, GOVERNMENT_LEGITIMACY);
+        world.setSynchronousMovement(synchronousMovement);
+        IntSeries active = new IntSeries(), jailed = new IntSeries(), quiet = new IntSeries();
+        for (int step = 0; step < STEPS; step++) {
+            world.tick();
+            active.add(world.getActiveAgentCount());
+            jailed.add(world.getJailedAgentCount());
+            quiet.add(world.getQuietAgentCount());
+        }
+        double[] values = {active.mean(), jailed.mean(), quiet.mean(), active.stdDev(), active.max()};
+        StringBuilder line = new StringBuilder();
+        line.append(synchronousMovement ? "Synchronous" : "Sequential").append(',').append(replicate + 1).append(',').append(seed);
+        for (int m = 0; m < METRICS.length; m++) {
+            results[m][replicate] = values[m];
+            line.append(',').append(String.format("%.4f", values[m]));
+        }
+        writer.println(line);
+        writer.flush();
+    }
+
+    private static double mean(double[] values) {
+        double sum = 0;
+        for (double v : values) {
+            sum += v;
+        }
+        return sum / values.length;
+    }
+
+    // Sample variance
+    private static double variance(double[] values, double mean) {
+        if (values.length < 2) {
+            return 0;
+        }
+        double sum = 0;
+        for (double v : values) {
+            sum += (v - mean) * (v - mean);
+        }
+        return sum / (values.length - 1);
+    }
+}
@@ -1,4 +1,10 @@
+import engine.WorldSpec;
+import engine.MeanField;
+import entity.AppConfig;
 import entity.World;
+import metrics.ClusterAnalyzer;
+import metrics.ExperimentEvent;
+import metrics.TickMetrics;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
@@ -68,16 +74,78 @@ public class ParameterExplorer {
     private static final int WORLD_SIZE = 40;
     private static final int SIMULATION_STEPS = 100;
     private static final int REPETITIONS = 1;
+    // Experiments run one World at a time; -Drebellion.engine=meanfield screens the sweep with the approximate
+    // MeanField engine instead (expected counts, flagged as approximate; see MeanFieldCalibration),
+    // -Drebellion.meanField.block sets its block size
+    private static final boolean USE_MEAN_FIELD = "meanfield".equals(System.getProperty("rebellion.engine"));
+    private static final int MEAN_FIELD_BLOCK = Integer.getInteger("rebellion.meanField.block", 10);
+    // Quiescent stretches (no agent can become active) are fast-forwarded: the counts are exact, positions
+    // are not simulated, and the summary reports how many ticks were skipped; -Drebellion.fastForward=false
+    // simulates every tick
+    private static final boolean FAST_FORWARD = Boolean.parseBoolean(System.getProperty("rebellion.fastForward", "true"));
+    // -Drebellion.clusters=true labels the connected clusters of active agents every tick (cells within
+    // -Drebellion.clusters.radius of each other, default 1) and adds cluster columns to the summary
+    private static final boolean CLUSTERS = Boolean.getBoolean("rebellion.clusters");
+    private static final int CLUSTER_RADIUS = Integer.getInteger("rebellion.clusters.radius", 1);
+    private static final double K = 2.3;
+    private static final double THRESHOLD = 0.1;
+    // Finished runs are reused across sweeps; -Drebellion.cache=false always re-simulates
+    private static final ResultCache CACHE = Boolean.parseBoolean(System.getProperty("rebellion.cache", "true"))
+            ? new ResultCache(Paths.get(System.getProperty("rebellion.cache.dir", "parameter_exploration_results/cache")),
+                    Long.getLong("rebellion.cache.maxBytes", 64L << 20),
+                    Integer.getInteger("rebellion.cache.maxEntries", 10_000))
+            : null;
+    // Experiment i runs with seed BASE_SEED + i; pass -Drebellion.seed=<n> to reproduce a sweep. With the cache on
+    // the default is a fixed seed, so that a repeated sweep finds its runs; without it every sweep draws a new one
+    private static final long BASE_SEED = Long.getLong("rebellion.seed", CACHE != null ? 0 : System.nanoTime());
 
     // Add new statistics tracking
     private static class RebellionStats {
         int outbreakCount = 0;  // Number of times rebellion outbreak occurred
         int maxRebellionSize = 0;  // Maximum number of active agents
         int totalRebellionSteps = 0;  // Total steps with active agents
-        List<Integer> rebellionSizes = new ArrayList<>();  // Track rebellion sizes over time
-        List<Integer> activeCounts = new ArrayList<>();  // Track active counts over time
-        List<Integer> jailedCounts = new ArrayList<>();  // Track jailed counts over time
-        List<Integer> quietCounts = new ArrayList<>();  // Track quiet counts over time
+        IntSeries rebellionSizes = new IntSeries();  // Track rebellion sizes over time
+        IntSeries activeCounts = new IntSeries();  // Track active counts over time
+        IntSeries jailedCounts = new IntSeries();  // Track jailed counts over time
+        IntSeries quietCounts = new IntSeries();  // Track quiet counts over time
+        boolean inRebellion = false;
+        int rebellionStartStep = 0;
+        int fastForwardedTicks = 0;  // Ticks fast-forwarded instead of simulated
+        // Cluster analysis (with CLUSTERS and a spatial engine)
+        IntSeries clusterCounts = new IntSeries();  // Clusters per tick
+        IntSeries largestClusters = new IntSeries();  // Agents in the largest cluster per tick
+        long[] clusterSizes = new long[ClusterAnalyzer.BINS];  // Clusters per size bin, summed over the ticks
+
+        void record(int step, int activeCount, int jailedCount, int quietCount) {
+            // Track rebellion statistics
+            activeCounts.add(activeCount);
+            jailedCounts.add(jailedCount);
+            quietCounts.add(quietCount);
+            rebellionSizes.add(activeCount);
+
+            // Detect rebellion outbreaks
+            if (activeCount > 0 && !inRebellion) {
+                inRebellion = true;
+                rebellionStartStep = step;
+                outbreakCount++;
+            } else if (activeCount == 0 && inRebellion) {
+                inRebellion = false;
+                totalRebellionSteps += (step - rebellionStartStep);
+            }
+
+            // Update maximum rebellion size
+            if (activeCount > maxRebellionSize) {
+                maxRebellionSize = activeCount;
+            }
+        }
+
+        void recordClusters(ClusterAnalyzer analyzer) {
+            clusterCounts.add(analyzer.getClusterCount());
+            largestClusters.add(analyzer.getLargestCluster());
+            for (int bin = 0; bin < ClusterAnalyzer.BINS; bin++) {
+                clusterSizes[bin] += analyzer.getClusters(bin);
+            }
+        }
     }
 
     public static void main(String[] args) {
@@ -93,19 +161,60 @@ public class ParameterExplorer {
             summaryWriter.println("ExperimentID,Description,CopDensity,AgentDensity,Legitimacy,JailTerm,Vision," +
                     "AvgActive,AvgJailed,AvgQuiet,MaxActive,MaxJailed,MaxQuiet,MinActive,MinJailed,MinQuiet," +
                     "OutbreakCount,RebellionFrequency,AvgRebellionSize,MaxRebellionSize,TotalRebellionSteps," +
-                    "StabilityIndex,RecoveryTime");
+                    "StabilityIndex,RecoveryTime,FastForwardedTicks" +
+                    (CLUSTERS ? ",AvgClusters,MaxClusters,AvgLargestCluster,MaxLargestCluster,ClusterSizes" : ""));
 
             // Store data for parameter interaction analysis
             List<Double> copDensities = new ArrayList<>();
             List<Double> legitimacies = new ArrayList<>();
             List<Double> stabilityIndices = new ArrayList<>();
 
-            // Run each parameter set
+            System.out.printf("Base seed %d%s%n", BASE_SEED, System.getProperty("rebellion.seed") != null ? ""
+                    : CACHE != null ? " (fixed default while the cache is on; -Drebellion.seed=<n> to change)"
+                    : " (drawn for this sweep; -Drebellion.seed=<n> to reproduce it)");
+
+            // Take finished runs from the cache and simulate only the rest
+            RebellionStats[] results = new RebellionStats[PARAMETER_SETS.length];
+            String[] summaries = new String[PARAMETER_SETS.length];
+            List<Integer> pending = new ArrayList<>();
+            for (int i = 0; i < PARAMETER_SETS.length; i++) {
+                ResultCache.Entry cached = CACHE == null ? null : CACHE.get(configuration(i));
+                if (cached != null && cached.activeCounts().size() == SIMULATION_STEPS) {
+                    System.out.printf("Cached experiment %d (%s), seed=%d%n",
+                            i + 1, PARAMETER_SETS[i].description, BASE_SEED + i + 1);
+                    results[i] = replay(cached);
+                    summaries[i] = cached.summary();
+                    printFastForward(i + 1, results[i]);
+                } else {
+                    pending.add(i);
+                }
+            }
+            if (USE_MEAN_FIELD) {
+                runMeanField(pending, results);
+            } else {
+                runWorlds(pending, results);
+            }
+            for (int i : pending) {
+                RebellionStats stats = results[i];
+                summaries[i] = summaryStatistics(stats);
+                if (CACHE != null) {
+                    CACHE.put(configuration(i), new ResultCache.Entry(
+                            stats.activeCounts, stats.jailedCounts, stats.quietCounts, summaries[i],
+                            stats.fastForwardedTicks));
+                }
+            }
+            if (CACHE != null && !pending.isEmpty()) {
+                CACHE.evict();
+            }
+
+            // Report each parameter set
             for (int i = 0; i < PARAMETER_SETS.length; i++) {
                 ParameterSet params = PARAMETER_SETS[i];
-                RebellionStats stats = runExperiment(i + 1, params, summaryWriter);
+                RebellionStats stats = results[i];
+                writeSummary(i + 1, params, summaries[i], summaryWriter);
                 
                 // Generate charts for this experiment
+                long t = TickMetrics.start();
                 ChartGenerator.generateTimeSeriesChart(
                     stats.activeCounts,
                     stats.jailedCounts,
@@ -117,6 +226,7 @@ public class ParameterExplorer {
                     stats.rebellionSizes,
                     String.valueOf(i + 1)
                 );
+                TickMetrics.lap(TickMetrics.OUTPUT, t);
 
                 // Store data for parameter interaction analysis
                 if (!copDensities.contains(params.copDensity)) {
@@ -125,7 +235,7 @@ public class ParameterExplorer {
                 if (!legitimacies.contains(params.legitimacy)) {
                     legitimacies.add(params.legitimacy);
                 }
-                stabilityIndices.add(calculateStabilityIndex(stats.activeCounts));
+                stabilityIndices.add(stats.activeCounts.stdDev());
             }
 
             // Generate parameter interaction chart
@@ -140,95 +250,187 @@ public class ParameterExplorer {
         }
     }
 
-    private static RebellionStats runExperiment(int experimentId, ParameterSet params, PrintWriter summaryWriter) {
-        System.out.printf("Running experiment %d (%s): cop=%.2f, agent=%.2f, leg=%.2f, jail=%d, vision=%d%n",
-                experimentId, params.description, params.copDensity, params.agentDensity, 
-                params.legitimacy, params.jailTerm, params.vision);
+    // Ticks simulated by a full sweep without the cache, for ScalingBenchmark's ticks per second
+    static long sweepTicks() {
+        return (long) PARAMETER_SETS.length * SIMULATION_STEPS * REPETITIONS;
+    }
 
+    // Everything that determines the result of experiment i, used as the cache key
+    private static String configuration(int i) {
+        ParameterSet params = PARAMETER_SETS[i];
+        return "engine=" + AppConfig.ENGINE_VERSION + ";size=" + WORLD_SIZE + ";steps=" + SIMULATION_STEPS
+                + ";seed=" + (BASE_SEED + i + 1) + ";agentDensity=" + params.agentDensity
+                + ";copDensity=" + params.copDensity + ";legitimacy=" + params.legitimacy
+                + ";k=" + K + ";threshold=" + THRESHOLD + ";jailTerm=" + params.jailTerm + ";vision=" + params.vision
+                + ";maxJailTerm=" + AppConfig.MAX_JAIL_TERM + ";worldVision=" + AppConfig.VISION
+                + ";movement=" + AppConfig.MOVEMENT + ";fastForward=" + FAST_FORWARD
+                + ";synchronousMovement=" + AppConfig.SYNCHRONOUS_MOVEMENT
+                + ";spatialReorder=" + AppConfig.SPATIAL_REORDER_INTERVAL
+                + (USE_MEAN_FIELD ? ";meanField=" + MEAN_FIELD_BLOCK : "")
+                + (CLUSTERS ? ";clusters=" + CLUSTER_RADIUS : "");
+    }
+
+    // Statistics of a cached run, as far as the charts need them (the summary row is cached as it is)
+    private static RebellionStats replay(ResultCache.Entry entry) {
         RebellionStats stats = new RebellionStats();
-        boolean inRebellion = false;
-        int rebellionStartStep = 0;
+        stats.activeCounts = entry.activeCounts();
+        stats.rebellionSizes = entry.activeCounts();
+        stats.jailedCounts = entry.jailedCounts();
+        stats.quietCounts = entry.quietCounts();
+        stats.fastForwardedTicks = entry.fastForwardedTicks();
+        return stats;
+    }
 
-        // Run simulation
-        World world = new World(WORLD_SIZE, WORLD_SIZE);
-        world.setup(params.agentDensity, params.copDensity, 2.3, 0.1, params.legitimacy);
-        
-        for (int step = 0; step < SIMULATION_STEPS; step++) {
-            world.tick();
-            
-            int activeCount = world.getActiveAgentCount();
-            int jailedCount = world.getJailedAgentCount();
-            int quietCount = world.getQuietAgentCount();
+    private static void runWorlds(List<Integer> experiments, RebellionStats[] results) {
+        ClusterAnalyzer clusters = CLUSTERS ? new ClusterAnalyzer(WORLD_SIZE, WORLD_SIZE, CLUSTER_RADIUS) : null;
+        int[] skippedJailed = new int[SIMULATION_STEPS];
+        for (int i : experiments) {
+            int experimentId = i + 1;
+            ParameterSet params = PARAMETER_SETS[i];
+            long seed = BASE_SEED + experimentId;
+            printExperiment(experimentId, params, seed);
+            ExperimentEvent event = new ExperimentEvent();
+            event.begin();
 
-            // Track rebellion statistics
-            stats.activeCounts.add(activeCount);
-            stats.jailedCounts.add(jailedCount);
-            stats.quietCounts.add(quietCount);
-            stats.rebellionSizes.add(activeCount);
+            RebellionStats stats = new RebellionStats();
+            World world = new World(WORLD_SIZE, WORLD_SIZE, seed);
+            world.setup(params.agentDensity, params.copDensity, K, THRESHOLD, params.legitimacy);
+            int agents = world.getActiveAgentCount() + world.getJailedAgentCount() + world.getQuietAgentCount();
+            int step = 0;
+            while (step < SIMULATION_STEPS) {
+                // Quiescent stretches are skipped in one call: nobody is active, only the jailed count moves
+                int skipped = FAST_FORWARD ? world.skipQuiescent(SIMULATION_STEPS - step, skippedJailed) : 0;
+                for (int j = 0; j < skipped; j++, step++) {
+                    stats.record(step, 0, skippedJailed[j], agents - skippedJailed[j]);
+                    if (clusters != null) {
+                        clusters.clear();
+                        clusters.analyze();
+                        stats.recordClusters(clusters);
+                    }
+                }
+                if (skipped > 0) {
+                    continue;
+                }
+                world.tick();
+                stats.record(step, world.getActiveAgentCount(), world.getJailedAgentCount(), world.getQuietAgentCount());
+                if (clusters != null) {
+                    clusters.clear();
+                    world.addActiveCells(clusters);
+                    clusters.analyze();
+                    stats.recordClusters(clusters);
+                }
+                step++;
+            }
+            stats.fastForwardedTicks = world.getFastForwardedTicks();
+            printFastForward(experimentId, stats);
 
-            // Detect rebellion outbreaks
-            if (activeCount > 0 && !inRebellion) {
-                inRebellion = true;
-                rebellionStartStep = step;
-                stats.outbreakCount++;
-            } else if (activeCount == 0 && inRebellion) {
-                inRebellion = false;
-                stats.totalRebellionSteps += (step - rebellionStartStep);
+            commitExperiment(event, experimentId, params, seed);
+            results[i] = stats;
+        }
+    }
+
+    // Approximate screening runs: expected counts of the mean-field engine, rounded, never fast-forwarded
+    private static void runMeanField(List<Integer> experiments, RebellionStats[] results) {
+        for (int i : experiments) {
+            int experimentId = i + 1;
+            ParameterSet params = PARAMETER_SETS[i];
+            long seed = BASE_SEED + experimentId;
+            printExperiment(experimentId, params, seed);
+            System.out.printf("Experiment %d: APPROXIMATE (mean-field engine, %dx%d blocks; screen only, "
+                    + "rerun interesting sets with an exact engine)%n", experimentId, MEAN_FIELD_BLOCK, MEAN_FIELD_BLOCK);
+            if (CLUSTERS) {
+                System.out.printf("Experiment %d: no agent positions, cluster columns left empty%n", experimentId);
             }
+            ExperimentEvent event = new ExperimentEvent();
+            event.begin();
 
-            // Update maximum rebellion size
-            if (activeCount > stats.maxRebellionSize) {
-                stats.maxRebellionSize = activeCount;
+            RebellionStats stats = new RebellionStats();
+            MeanField model = new MeanField(WORLD_SIZE, WORLD_SIZE, MEAN_FIELD_BLOCK,
+                    new WorldSpec(seed, params.agentDensity, params.copDensity, K, THRESHOLD, params.legitimacy));
+            for (int step = 0; step < SIMULATION_STEPS; step++) {
+                model.tick();
+                stats.record(step, model.getActiveAgentCount(), model.getJailedAgentCount(), model.getQuietAgentCount());
             }
+
+            commitExperiment(event, experimentId, params, seed);
+            results[i] = stats;
         }
+    }
 
+    private static void printExperiment(int experimentId, ParameterSet params, long seed) {
+        System.out.printf("Running experiment %d (%s): cop=%.2f, agent=%.2f, leg=%.2f, jail=%d, vision=%d, seed=%d%n",
+                experimentId, params.description, params.copDensity, params.agentDensity, 
+                params.legitimacy, params.jailTerm, params.vision, seed);
+    }
+
+    private static void printFastForward(int experimentId, RebellionStats stats) {
+        if (stats.fastForwardedTicks > 0) {
+            System.out.printf("Experiment %d: FAST-FORWARDED %d of %d ticks (quiescent: no free agent can become active; "
+                    + "counts exact, positions not simulated)%n", experimentId, stats.fastForwardedTicks, SIMULATION_STEPS);
+        }
+    }
+
+    private static void commitExperiment(ExperimentEvent event, int experimentId, ParameterSet params, long seed) {
+        event.experimentId = experimentId;
+        event.description = params.description;
+        event.copDensity = params.copDensity;
+        event.agentDensity = params.agentDensity;
+        event.legitimacy = params.legitimacy;
+        event.jailTerm = params.jailTerm;
+        event.vision = params.vision;
+        event.seed = seed;
+        event.steps = SIMULATION_STEPS;
+        event.commit();
+    }
+
+    private static void writeSummary(int experimentId, ParameterSet params, String statistics, PrintWriter summaryWriter) {
+        summaryWriter.printf("%d,%s,%.2f,%.2f,%.2f,%d,%d,%s%n",
+                experimentId, params.description, params.copDensity, params.agentDensity,
+                params.legitimacy, params.jailTerm, params.vision, statistics);
+        summaryWriter.flush();
+    }
+
+    // Statistics columns of a summary row
+    private static String summaryStatistics(RebellionStats stats) {
         // Calculate additional statistics
         double rebellionFrequency = (double) stats.outbreakCount / SIMULATION_STEPS;
-        double avgRebellionSize = stats.rebellionSizes.stream()
-                .mapToInt(Integer::intValue)
-                .average()
-                .orElse(0.0);
+        double avgRebellionSize = stats.rebellionSizes.mean();
 
-        // Calculate stability index (lower means more stable)
-        double stabilityIndex = calculateStabilityIndex(stats.activeCounts);
+        // Calculate stability index (lower means more stable): standard deviation of active counts
+        double stabilityIndex = stats.activeCounts.stdDev();
 
         // Calculate average recovery time
         double recoveryTime = stats.outbreakCount > 0 ? 
                 (double) stats.totalRebellionSteps / stats.outbreakCount : 0;
 
-        // Write detailed results to CSV
-        summaryWriter.printf("%d,%s,%.2f,%.2f,%.2f,%d,%d," +
-                "%.2f,%.2f,%.2f,%d,%d,%d,%d,%d,%d," +
-                "%d,%.4f,%.2f,%d,%d,%.4f,%.2f%n",
-                experimentId, params.description, params.copDensity, params.agentDensity,
-                params.legitimacy, params.jailTerm, params.vision,
-                calculateAverage(stats.activeCounts), calculateAverage(stats.jailedCounts),
-                calculateAverage(stats.quietCounts),
-                stats.activeCounts.stream().mapToInt(Integer::intValue).max().orElse(0),
-                stats.jailedCounts.stream().mapToInt(Integer::intValue).max().orElse(0),
-                stats.quietCounts.stream().mapToInt(Integer::intValue).max().orElse(0),
-                stats.activeCounts.stream().mapToInt(Integer::intValue).min().orElse(0),
-                stats.jailedCounts.stream().mapToInt(Integer::intValue).min().orElse(0),
-                stats.quietCounts.stream().mapToInt(Integer::intValue).min().orElse(0),
+        String statistics = String.format("%.2f,%.2f,%.2f,%d,%d,%d,%d,%d,%d," +
+                "%d,%.4f,%.2f,%d,%d,%.4f,%.2f,%d",
+                stats.activeCounts.mean(), stats.jailedCounts.mean(),
+                stats.quietCounts.mean(),
+                stats.activeCounts.max(),
+                stats.jailedCounts.max(),
+                stats.quietCounts.max(),
+                stats.activeCounts.min(),
+                stats.jailedCounts.min(),
+                stats.quietCounts.min(),
                 stats.outbreakCount, rebellionFrequency, avgRebellionSize,
                 stats.maxRebellionSize, stats.totalRebellionSteps,
-                stabilityIndex, recoveryTime);
-
-        summaryWriter.flush();
-        return stats;
-    }
-
-    private static double calculateAverage(List<Integer> values) {
-        return values.stream().mapToInt(Integer::intValue).average().orElse(0.0);
-    }
-
-    private static double calculateStabilityIndex(List<Integer> activeCounts) {
-        // Calculate the variance of active counts as a measure of stability
-        double mean = calculateAverage(activeCounts);
-        double variance = activeCounts.stream()
-                .mapToDouble(x -> Math.pow(x - mean, 2))
-                .average()
-                .orElse(0.0);
-        return Math.sqrt(variance);
+                stabilityIndex, recoveryTime, stats.fastForwardedTicks);
+        if (!CLUSTERS) {
+            return statistics;
+        }
+        if (stats.clusterCounts.isEmpty()) {
+            return statistics + ",,,,,";
+        }
+        // Size distribution as "size range:clusters" pairs of the non-empty bins, counted over all ticks
+        StringBuilder sizes = new StringBuilder();
+        for (int bin = 0; bin < ClusterAnalyzer.BINS; bin++) {
+            if (stats.clusterSizes[bin] > 0) {
+                sizes.append(sizes.length() == 0 ? "" : " ").append(ClusterAnalyzer.binLabel(bin))
+                        .append(':').append(stats.clusterSizes[bin]);
+            }
+        }
+        return statistics + String.format(",%.2f,%d,%.2f,%d,%s", stats.clusterCounts.mean(), stats.clusterCounts.max(),
+                stats.largestClusters.mean(), stats.largestClusters.max(), sizes);
     }
-} 
\ No newline at end of file
+}
@@ -0,0 +1,170 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Content-addressed on-disk cache of finished runs.
+ * A run is stored under the SHA-256 of its configuration string, which must name everything that
+ * determines the result (parameters, seed, step count, engine version). An entry holds the bounded
+ * series of the active, jailed and quiet counts (see IntSeries), the summary row and the number of
+ * fast-forwarded ticks, and the configuration itself to guard against hash collisions.
+ *
+ * Least recently used entries (by file modification time, refreshed on every hit) are evicted when
+ * the cache holds more than maxEntries runs or maxBytes bytes; the limits are enforced on the first
+ * get and on evict, which a sweep calls once after its puts, so a run costs no directory scan.
+ * Cache problems are reported and treated as misses, never as failures of the sweep.
+ */
+public class ResultCache {
+    private static final int MAGIC = 0x52425243;   //"RBRC"
+    private static final int FORMAT = 3;
+    private static final String SUFFIX = ".run";
+
+    public record Entry(IntSeries activeCounts, IntSeries jailedCounts, IntSeries quietCounts, String summary,
+                        int fastForwardedTicks) {
+    }
+
+    private final Path dir;
+    private final long maxBytes;
+    private final int maxEntries;
+    private boolean trimmed = false;    //limits enforced at least once, in case they were lowered
+
+    public ResultCache(Path dir, long maxBytes, int maxEntries) {
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Cached run for the configuration, or null if there is none
+     */
+    public Entry get(String configuration) {
+        trim();
+        Path file = file(configuration);
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT || !in.readUTF().equals(configuration)) {
+                return null;
+            }
+            IntSeries active = IntSeries.readFrom(in), jailed = IntSeries.readFrom(in), quiet = IntSeries.readFrom(in);
+            String summary = in.readUTF();
+            int fastForwardedTicks = in.readInt();
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            return new Entry(active, jailed, quiet, summary, fastForwardedTicks);
+        } catch (IOException e) {
+            System.err.println("Ignoring unreadable cache entry " + file + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    public void put(String configuration, Entry entry) {
+        Path file = file(configuration);
+        Path tmp = null;
+        try {
+            Files.createDirectories(dir);
+            // Write to a temporary file first, so a reader never sees a half-written entry
+            tmp = Files.createTempFile(dir, "entry", ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT);
+                out.writeUTF(configuration);
+                entry.activeCounts().writeTo(out);
+                entry.jailedCounts().writeTo(out);
+                entry.quietCounts().writeTo(out);
+                out.writeUTF(entry.summary());
+                out.writeInt(entry.fastForwardedTicks());
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("Error writing cache entry " + file + ": " + e.getMessage());
+            deleteQuietly(tmp);
+        }
+    }
+
+    private void trim() {
+        if (!trimmed) {
+            evict();
+        }
+    }
+
+    /**
+     * Delete least recently used entries until both limits hold; call once after a batch of puts
+     */
+    public void evict() {
+        trimmed = true;
+        if (!Files.isDirectory(dir)) {
+            return;
+        }
+        try {
+            evictEntries();
+        } catch (IOException e) {
+            System.err.println("Error trimming cache " + dir + ": " + e.getMessage());
+        }
+    }
+
+    private void evictEntries() throws IOException {
+        List<Path> entries = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "*" + SUFFIX)) {
+            stream.forEach(entries::add);
+        }
+        Map<Path, FileTime> lastUsed = new HashMap<>();
+        for (Path entry : entries) {
+            lastUsed.put(entry, Files.getLastModifiedTime(entry));
+        }
+        entries.sort(Comparator.comparing((Path entry) -> lastUsed.get(entry)).reversed());
+
+        long bytes = 0;
+        int kept = 0;
+        for (Path entry : entries) {
+            long size = Files.size(entry);
+            if (kept < maxEntries && bytes + size <= maxBytes) {
+                kept++;
+                bytes += size;
+            } else {
+                Files.deleteIfExists(entry);
+            }
+        }
+    }
+
+    private Path file(String configuration) {
+        return dir.resolve(hash(configuration) + SUFFIX);
+    }
+
+    private static String hash(String configuration) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(configuration.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    // Remove the temporary file of a failed put, if it was created
+    private static void deleteQuietly(Path tmp) {
+        if (tmp == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(tmp);
+        } catch (IOException e) {
+            System.err.println("Error deleting " + tmp + ": " + e.getMessage());
+        }
+    }
+}
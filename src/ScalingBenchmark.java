@@ -0,0 +1,474 @@
+import entity.World;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import static entity.AppConfig.*;
+
+/**
+ * End-to-end scaling benchmark of whole workloads, as opposed to the per-tick checks. Every
+ * measurement runs in a fresh JVM (as SpatialOrderBenchmark) and reports wall time, ticks per
+ * second, peak heap, GC time and allocation rate over the measured ticks:
+ *
+ * size        one World per grid size
+ * population  one World of .size per agent density
+ * strong      a fixed batch of .worlds Worlds split over T threads (speedup, efficiency = speedup / T)
+ * weak        T * .perThread Worlds on T threads (efficiency = time at 1 thread / time at T)
+ * explorer    a whole ParameterExplorer sweep, without the cache, in a temporary directory
+ *
+ * T runs over .threads, and the child's common pool (World.tick's parallel target selection) is
+ * capped to T as well. Each measurement is repeated and the run with the median wall time is kept.
+ * Peak heap is the sum of the heap pools' peaks, an upper bound of the real peak; allocation
+ * counts the threads alive at the end of the measurement plus the workers.
+ *
+ * Results go to .out: scaling.csv for this run, scaling_history.csv (appended, one row per
+ * measurement with the label, by default the git commit) and PNG charts. With .baseline=<label>
+ * every measurement is compared with the latest one of that label in the history, and a drop in
+ * ticks per second beyond .tolerance is reported as a regression (exit status 1). The seed is
+ * fixed by default so runs on different commits simulate the same worlds.
+ *
+ * -Drebellion.scaling.sizes and .densities and .threads (comma separated), .size, .worlds,
+ * .perThread, .warmup, .ticks, .repeats, .explorer, .label, .baseline, .tolerance, .out and
+ * -Drebellion.seed override the defaults; -Drebellion.engine is passed on to ParameterExplorer.
+ */
+public class ScalingBenchmark {
+    private static final int CORES = Runtime.getRuntime().availableProcessors();
+    private static final int[] SIZES = ints(System.getProperty("rebellion.scaling.sizes", "40,80,160,320"));
+    private static final double[] DENSITIES = Arrays.stream(System.getProperty("rebellion.scaling.densities",
+            "0.2,0.4,0.7").split(",")).map(String::trim).mapToDouble(Double::parseDouble).toArray();
+    private static final int[] THREADS = ints(System.getProperty("rebellion.scaling.threads", defaultThreads()));
+    private static final int SIZE = Integer.getInteger("rebellion.scaling.size", 80);
+    private static final int WORLDS = Integer.getInteger("rebellion.scaling.worlds", 8);
+    private static final int PER_THREAD = Integer.getInteger("rebellion.scaling.perThread", 2);
+    private static final int WARMUP = Integer.getInteger("rebellion.scaling.warmup", 100);
+    private static final int TICKS = Integer.getInteger("rebellion.scaling.ticks", 200);
+    private static final int REPEATS = Integer.getInteger("rebellion.scaling.repeats", 3);
+    private static final boolean EXPLORER = Boolean.parseBoolean(System.getProperty("rebellion.scaling.explorer", "true"));
+    private static final String BASELINE = System.getProperty("rebellion.scaling.baseline");
+    private static final double TOLERANCE = Double.parseDouble(System.getProperty("rebellion.scaling.tolerance", "0.1"));
+    private static final Path OUT = Paths.get(System.getProperty("rebellion.scaling.out", "parameter_exploration_results/scaling"));
+    // Fixed by default: results of different commits are only comparable on the same worlds
+    private static final long SEED = Long.getLong("rebellion.seed", 1);
+
+    private static final String HEADER = "Workload,Size,AgentDensity,Worlds,Threads,WallMs,TicksPerSecond,"
+            + "PeakHeapMB,GcMs,AllocMBPerSecond";
+
+    // One measurement; ticks counts the ticks of all worlds together
+    private record Result(String workload, int size, double agentDensity, int worlds, int threads,
+                          double wallMs, long ticks, double peakHeapMB, double gcMs, double allocMB) {
+        double ticksPerSecond() {
+            return ticks / (wallMs / 1e3);
+        }
+
+        double allocMBPerSecond() {
+            return allocMB / (wallMs / 1e3);
+        }
+
+        String key() {
+            return workload + "," + size + "," + agentDensity + "," + worlds + "," + threads;
+        }
+
+        String csv() {
+            return String.format("%s,%d,%.2f,%d,%d,%.1f,%.1f,%.1f,%.1f,%.1f", workload, size, agentDensity, worlds,
+                    threads, wallMs, ticksPerSecond(), peakHeapMB, gcMs, allocMBPerSecond());
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length == 5 && args[0].equals("--child")) {
+            child(Integer.parseInt(args[1]), Integer.parseInt(args[2]), Double.parseDouble(args[3]),
+                    Integer.parseInt(args[4]));
+            return;
+        }
+        if (args.length == 1 && args[0].equals("--explorer")) {
+            explorer();
+            return;
+        }
+
+        String label = System.getProperty("rebellion.scaling.label", gitCommit());
+        int maxThreads = Arrays.stream(THREADS).max().orElse(1);
+        System.out.printf("Label %s, %d cores, %d warm-up and %d measured ticks, median of %d runs, seed %d%n",
+                label, CORES, WARMUP, TICKS, REPEATS, SEED);
+
+        List<Result> results = new ArrayList<>();
+        for (int size : SIZES) {
+            results.add(measure("size", size, INITIAL_AGENT_DENSITY, 1, maxThreads));
+        }
+        for (double density : DENSITIES) {
+            results.add(measure("population", SIZE, density, 1, maxThreads));
+        }
+        for (int threads : THREADS) {
+            results.add(measure("strong", SIZE, INITIAL_AGENT_DENSITY, WORLDS, threads));
+        }
+        for (int threads : THREADS) {
+            results.add(measure("weak", SIZE, INITIAL_AGENT_DENSITY, threads * PER_THREAD, threads));
+        }
+        if (EXPLORER) {
+            for (int threads : THREADS) {
+                results.add(measure("explorer", 40, 0, 1, threads));
+            }
+        }
+
+        printTable("Grid size (1 world, " + maxThreads + " threads)", select(results, "size"), null);
+        printTable("Population (" + SIZE + "x" + SIZE + ", " + maxThreads + " threads)", select(results, "population"), null);
+        printTable("Strong scaling (" + WORLDS + " worlds of " + SIZE + "x" + SIZE + ")", select(results, "strong"), true);
+        printTable("Weak scaling (" + PER_THREAD + " worlds of " + SIZE + "x" + SIZE + " per thread)",
+                select(results, "weak"), false);
+        if (EXPLORER) {
+            printTable("ParameterExplorer sweep", select(results, "explorer"), true);
+        }
+
+        Files.createDirectories(OUT);
+        writeCsv(results, label);
+        writeCharts(results);
+        boolean regression = BASELINE != null && compare(results, readHistory(BASELINE));
+        appendHistory(results, label);
+        System.out.println("Results written to " + OUT);
+        if (regression) {
+            System.exit(1);
+        }
+    }
+
+    // Median of REPEATS fresh JVMs, by wall time
+    private static Result measure(String workload, int size, double density, int worlds, int threads)
+            throws IOException, InterruptedException {
+        List<Result> runs = new ArrayList<>();
+        for (int r = 0; r < Math.max(1, REPEATS); r++) {
+            runs.add(run(workload, size, density, worlds, threads));
+        }
+        runs.sort(Comparator.comparingDouble(Result::wallMs));
+        Result median = runs.get(runs.size() / 2);
+        System.out.printf("%-10s size=%-4d density=%.2f worlds=%-3d threads=%-3d %10.1f ticks/s%n",
+                workload, size, density, worlds, threads, median.ticksPerSecond());
+        return median;
+    }
+
+    private static Result run(String workload, int size, double density, int worlds, int threads)
+            throws IOException, InterruptedException {
+        boolean explorer = workload.equals("explorer");
+        List<String> command = new ArrayList<>();
+        command.add(ProcessHandle.current().info().command().orElse("java"));
+        command.addAll(List.of("-cp", absoluteClassPath(), "-Drebellion.seed=" + SEED,
+                "-Djava.util.concurrent.ForkJoinPool.common.parallelism=" + threads));
+        if (explorer) {
+            command.addAll(List.of("-Djava.awt.headless=true", "-Drebellion.cache=false"));
+            if (System.getProperty("rebellion.engine") != null) {
+                command.add("-Drebellion.engine=" + System.getProperty("rebellion.engine"));
+            }
+            command.addAll(List.of(ScalingBenchmark.class.getName(), "--explorer"));
+        } else {
+            command.addAll(List.of(ScalingBenchmark.class.getName(), "--child", String.valueOf(worlds),
+                    String.valueOf(size), String.valueOf(density), String.valueOf(threads)));
+        }
+        ProcessBuilder builder = new ProcessBuilder(command).redirectErrorStream(true);
+        // The sweep writes its own results: keep them out of the working directory
+        Path directory = explorer ? Files.createTempDirectory("rebellion-scaling") : null;
+        if (directory != null) {
+            builder.directory(directory.toFile());
+        }
+        Process process = builder.start();
+
+        String[] fields = null;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("RESULT ")) {
+                    fields = line.substring(7).split(" ");
+                }
+            }
+        }
+        if (process.waitFor() != 0 || fields == null) {
+            throw new IOException("Benchmark child failed: " + String.join(" ", command));
+        }
+        if (directory != null) {
+            deleteRecursively(directory);
+        }
+        // RESULT wallNanos ticks peakHeapBytes gcMillis allocatedBytes
+        return new Result(workload, size, density, worlds, threads, Long.parseLong(fields[0]) / 1e6,
+                Long.parseLong(fields[1]), Long.parseLong(fields[2]) / 1048576.0, Long.parseLong(fields[3]),
+                Long.parseLong(fields[4]) / 1048576.0);
+    }
+
+    // Worlds w, w + threads, ... run on worker thread w; warm-up and measurement are separate phases
+    private static void child(int worlds, int size, double density, int threads) throws InterruptedException {
+        World[] all = new World[worlds];
+        for (int w = 0; w < worlds; w++) {
+            all[w] = new World(size, size, SEED + w);
+            all[w].setup(density, INITIAL_COP_DENSITY, K, THRESHOLD, GOVERNMENT_LEGITIMACY);
+        }
+        runWorkers(all, threads, WARMUP, null);
+
+        AtomicLong workerBytes = new AtomicLong();
+        Probe probe = new Probe();
+        runWorkers(all, threads, TICKS, workerBytes);
+        probe.finish((long) worlds * TICKS, workerBytes.get());
+    }
+
+    private static void runWorkers(World[] worlds, int threads, int ticks, AtomicLong allocated)
+            throws InterruptedException {
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Thread[] workers = new Thread[Math.min(threads, worlds.length)];
+        for (int t = 0; t < workers.length; t++) {
+            int first = t;
+            workers[t] = new Thread(() -> {
+                long before = bean.getCurrentThreadAllocatedBytes();
+                for (int i = 0; i < ticks; i++) {
+                    for (int w = first; w < worlds.length; w += workers.length) {
+                        worlds[w].tick();
+                    }
+                }
+                if (allocated != null) {
+                    allocated.addAndGet(bean.getCurrentThreadAllocatedBytes() - before);
+                }
+            }, "scaling-" + t);
+            workers[t].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+    }
+
+    private static void explorer() {
+        // Warm-up sweep, then the measured one, both in this JVM
+        ParameterExplorer.main(new String[0]);
+        Probe probe = new Probe();
+        ParameterExplorer.main(new String[0]);
+        probe.finish(ParameterExplorer.sweepTicks(), 0);
+    }
+
+    // JVM counters from construction to finish(), printed as the RESULT line the parent reads
+    private static final class Probe {
+        private final com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        private final Map<Long, Long> allocatedBefore = new HashMap<>();
+        private final long gcBefore;
+        private final long start;
+
+        Probe() {
+            System.gc();
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                if (pool.getType() == MemoryType.HEAP) {
+                    pool.resetPeakUsage();
+                }
+            }
+            long[] ids = threads.getAllThreadIds();
+            long[] bytes = threads.getThreadAllocatedBytes(ids);
+            for (int i = 0; i < ids.length; i++) {
+                allocatedBefore.put(ids[i], bytes[i]);
+            }
+            gcBefore = gcMillis();
+            start = System.nanoTime();
+        }
+
+        // workerBytes: allocation of threads that ended before finish(), measured by themselves
+        void finish(long ticks, long workerBytes) {
+            long wall = System.nanoTime() - start;
+            long gc = gcMillis() - gcBefore;
+            long peak = 0;
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                if (pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null) {
+                    peak += pool.getPeakUsage().getUsed();
+                }
+            }
+            long allocated = workerBytes;
+            long[] ids = threads.getAllThreadIds();
+            long[] bytes = threads.getThreadAllocatedBytes(ids);
+            for (int i = 0; i < ids.length; i++) {
+                if (bytes[i] >= 0) {
+                    allocated += bytes[i] - allocatedBefore.getOrDefault(ids[i], 0L);
+                }
+            }
+            System.out.println("RESULT " + wall + " " + ticks + " " + peak + " " + gc + " " + allocated);
+        }
+
+        private static long gcMillis() {
+            long total = 0;
+            for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+                total += Math.max(0, gc.getCollectionTime());
+            }
+            return total;
+        }
+    }
+
+    private static List<Result> select(List<Result> results, String workload) {
+        return results.stream().filter(r -> r.workload().equals(workload)).collect(Collectors.toList());
+    }
+
+    // strong: speedup and efficiency against the first row; weak: efficiency only; null: neither
+    private static void printTable(String title, List<Result> rows, Boolean strong) {
+        System.out.printf("%n%s%n", title);
+        System.out.printf("%-6s %-8s %-6s %-7s %10s %12s %10s %8s %10s", "Size", "Density", "Worlds", "Threads",
+                "Wall ms", "Ticks/s", "Heap MB", "GC ms", "Alloc MB/s");
+        System.out.println(strong == null ? "" : strong ? String.format(" %8s %10s", "Speedup", "Efficiency")
+                : String.format(" %10s", "Efficiency"));
+        for (Result r : rows) {
+            System.out.printf("%-6d %-8.2f %-6d %-7d %10.1f %12.1f %10.1f %8.1f %10.1f", r.size(), r.agentDensity(),
+                    r.worlds(), r.threads(), r.wallMs(), r.ticksPerSecond(), r.peakHeapMB(), r.gcMs(),
+                    r.allocMBPerSecond());
+            if (strong == null) {
+                System.out.println();
+            } else if (strong) {
+                double speedup = rows.get(0).wallMs() / r.wallMs();
+                System.out.printf(" %8.2f %10.2f%n", speedup, speedup * rows.get(0).threads() / r.threads());
+            } else {
+                System.out.printf(" %10.2f%n", rows.get(0).wallMs() / r.wallMs());
+            }
+        }
+    }
+
+    private static void writeCsv(List<Result> results, String label) throws IOException {
+        try (PrintWriter writer = new PrintWriter(new FileWriter(OUT.resolve("scaling.csv").toFile()))) {
+            writer.println("Label," + HEADER);
+            for (Result r : results) {
+                writer.println(label + "," + r.csv());
+            }
+        }
+    }
+
+    private static void appendHistory(List<Result> results, String label) throws IOException {
+        File history = OUT.resolve("scaling_history.csv").toFile();
+        boolean exists = history.exists();
+        try (PrintWriter writer = new PrintWriter(new FileWriter(history, true))) {
+            if (!exists) {
+                writer.println("Label,Timestamp,Java,Cores," + HEADER);
+            }
+            String prefix = label + "," + Instant.now() + "," + System.getProperty("java.version") + "," + CORES + ",";
+            for (Result r : results) {
+                writer.println(prefix + r.csv());
+            }
+        }
+    }
+
+    // Latest ticks per second of each measurement with the label, by Result.key()
+    private static Map<String, Double> readHistory(String label) throws IOException {
+        Map<String, Double> latest = new LinkedHashMap<>();
+        Path history = OUT.resolve("scaling_history.csv");
+        if (!Files.exists(history)) {
+            return latest;
+        }
+        for (String line : Files.readAllLines(history)) {
+            String[] fields = line.split(",");
+            if (fields.length < 11 || !fields[0].equals(label)) {
+                continue;
+            }
+            String key = fields[4] + "," + fields[5] + "," + Double.parseDouble(fields[6]) + "," + fields[7] + "," + fields[8];
+            latest.put(key, Double.parseDouble(fields[10]));
+        }
+        return latest;
+    }
+
+    private static boolean compare(List<Result> results, Map<String, Double> baseline) {
+        System.out.printf("%nAgainst baseline %s (tolerance %.0f%%)%n", BASELINE, TOLERANCE * 100);
+        if (baseline.isEmpty()) {
+            System.out.println("No measurements with this label in the history");
+            return false;
+        }
+        boolean regression = false;
+        for (Result r : results) {
+            Double before = baseline.get(r.key());
+            if (before == null) {
+                continue;
+            }
+            double change = r.ticksPerSecond() / before - 1;
+            boolean worse = change < -TOLERANCE;
+            regression |= worse;
+            System.out.printf("%-10s size=%-4d density=%.2f worlds=%-3d threads=%-3d %+7.1f%%%s%n", r.workload(),
+                    r.size(), r.agentDensity(), r.worlds(), r.threads(), change * 100, worse ? "  REGRESSION" : "");
+        }
+        return regression;
+    }
+
+    private static void writeCharts(List<Result> results) {
+        List<Result> strong = select(results, "strong"), weak = select(results, "weak"), explorer = select(results, "explorer");
+        double[] threads = Arrays.stream(THREADS).asDoubleStream().toArray();
+        List<String> names = new ArrayList<>(List.of("worlds"));
+        List<double[]> speedups = new ArrayList<>(List.of(speedups(strong)));
+        if (!explorer.isEmpty()) {
+            names.add("explorer");
+            speedups.add(speedups(explorer));
+        }
+        double[] ideal = Arrays.stream(THREADS).mapToDouble(t -> (double) t / THREADS[0]).toArray();
+        ChartGenerator.generateScalingChart("Strong Scaling", "Threads", "Speedup", threads, names, speedups, ideal,
+                OUT.resolve("scaling_strong.png").toFile());
+
+        double[] efficiency = weak.stream().mapToDouble(r -> weak.get(0).wallMs() / r.wallMs()).toArray();
+        double[] flat = new double[THREADS.length];
+        Arrays.fill(flat, 1);
+        ChartGenerator.generateScalingChart("Weak Scaling", "Threads", "Efficiency", threads, List.of("worlds"),
+                List.of(efficiency), flat, OUT.resolve("scaling_weak.png").toFile());
+
+        List<Result> size = select(results, "size"), population = select(results, "population");
+        ChartGenerator.generateScalingChart("Grid Size", "Grid size", "Ticks per second",
+                Arrays.stream(SIZES).asDoubleStream().toArray(), List.of("ticks/s"),
+                List.of(size.stream().mapToDouble(Result::ticksPerSecond).toArray()), null,
+                OUT.resolve("scaling_size.png").toFile());
+        ChartGenerator.generateScalingChart("Population", "Agent density", "Ticks per second", DENSITIES,
+                List.of("ticks/s"), List.of(population.stream().mapToDouble(Result::ticksPerSecond).toArray()), null,
+                OUT.resolve("scaling_population.png").toFile());
+    }
+
+    // Against the first row (the fewest threads), so the ideal line starts at 1
+    private static double[] speedups(List<Result> rows) {
+        return rows.stream().mapToDouble(r -> rows.get(0).wallMs() / r.wallMs()).toArray();
+    }
+
+    // Powers of two up to the core count, and the core count itself
+    private static String defaultThreads() {
+        List<String> threads = new ArrayList<>();
+        for (int t = 1; t < CORES; t *= 2) {
+            threads.add(String.valueOf(t));
+        }
+        threads.add(String.valueOf(CORES));
+        return String.join(",", threads);
+    }
+
+    private static String gitCommit() {
+        try {
+            Process process = new ProcessBuilder("git", "rev-parse", "--short", "HEAD").redirectErrorStream(true).start();
+            String output = new String(process.getInputStream().readAllBytes()).trim();
+            return process.waitFor() == 0 && !output.isEmpty() ? output : "unlabelled";
+        } catch (IOException | InterruptedException e) {
+            return "unlabelled";
+        }
+    }
+
+    // The explorer child runs in another directory
+    private static String absoluteClassPath() {
+        return Arrays.stream(System.getProperty("java.class.path").split(File.pathSeparator))
+                .map(entry -> Paths.get(entry).toAbsolutePath().toString())
+                .collect(Collectors.joining(File.pathSeparator));
+    }
+
+    private static void deleteRecursively(Path directory) throws IOException {
+        try (var paths = Files.walk(directory)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    private static int[] ints(String list) {
+        return Arrays.stream(list.split(",")).map(String::trim).mapToInt(Integer::parseInt).toArray();
+    }
+}
@@ -0,0 +1,481 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import engine.WorldSpec;
+import entity.World;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static entity.AppConfig.*;
+
+/**
+ * Resident simulation server on localhost, so a pipeline submitting many short runs pays for JVM
+ * startup and JIT warm-up once instead of once per run.
+ *
+ * Every job is a sweep: each model parameter may be a comma-separated list, and the job runs every
+ * combination, replicates seeds each, one World after the other, so a job holds one world at a
+ * time. A single run is a sweep of one world. Jobs wait in a bounded queue for a fixed pool of
+ * warm workers, and the ticks of a job are streamed to readers as they are produced. The ticks go
+ * to a file per job rather than the heap, so a large job does not grow the server.
+ *
+ *   POST   /jobs?steps=100&size=40&seed=7&legitimacy=0.7,0.8&replicates=4[&stream=true]
+ *          queue a job and answer "job <id>"; with stream=true the same response then streams its
+ *          ticks, and closing the connection cancels the job
+ *   GET    /jobs/<id>          state, progress and the parameters of each world
+ *   GET    /jobs/<id>/ticks    "world,tick,active,jailed,quiet" lines (world by world) from the
+ *                              start, then new ones as they come, ending with "# <state>"
+ *   DELETE /jobs/<id>          cancel a queued or running job
+ *
+ * Job parameters: agentDensity, copDensity, k, threshold, legitimacy (defaults from AppConfig),
+ * seed (default random), replicates (seeds seed, seed+1, ...), size and steps.
+ * -Drebellion.server.port, .workers, .queue (jobs waiting for a worker), .retain and .retainBytes
+ * (finished jobs kept for late readers, and the heap and tick-file bytes they may hold), .dir (tick
+ * files, default the temporary directory), .maxWorlds (worlds of one job) and .maxCells (cells of
+ * one job over all its worlds) override the defaults.
+ */
+public class SimulationServer {
+    private static final int PORT = Integer.getInteger("rebellion.server.port", 8090);
+    private static final int WORKERS = Integer.getInteger("rebellion.server.workers", Runtime.getRuntime().availableProcessors());
+    private static final int QUEUE = Integer.getInteger("rebellion.server.queue", 10000);
+    private static final int RETAIN = Integer.getInteger("rebellion.server.retain", 1000);
+    private static final long RETAIN_BYTES = Long.getLong("rebellion.server.retainBytes", 256L << 20);
+    private static final Path DIR = Paths.get(System.getProperty("rebellion.server.dir", System.getProperty("java.io.tmpdir")));
+    // Approximate heap held by one WorldSpec of a retained job
+    private static final int SPEC_BYTES = 72;
+    private static final long MAX_CELLS = Long.getLong("rebellion.server.maxCells", 1L << 26);
+    private static final int MAX_WORLDS = Integer.getInteger("rebellion.server.maxWorlds", 1 << 16);
+
+    enum State { QUEUED, RUNNING, DONE, CANCELLED, FAILED }
+
+    private final ThreadPoolExecutor workers;
+    private final Map<Long, Job> jobs = new ConcurrentHashMap<>();
+    private final ArrayDeque<Job> finished = new ArrayDeque<>();     //guarded by this
+    private long retainedBytes = 0;                                     //guarded by this
+    private final AtomicLong nextId = new AtomicLong(1);
+
+    /**
+     * One submitted sweep. Its tick lines are appended to a file that is kept until the job is
+     * retired, so readers can attach at any time; readers wait on the job for new lines.
+     */
+    final class Job implements Runnable {
+        final long id;
+        final int size, steps;
+        final List<WorldSpec> specs;
+        private Path file;                                      //tick lines, created when the job starts; guarded by this
+        private long written = 0;                               //bytes of complete ticks in file, guarded by this
+        private State state = State.QUEUED;                     //guarded by this
+        private String error;
+        private volatile boolean cancelled;
+        private volatile int world, progress;                  //worlds started and ticks of the current one
+
+        Job(long id, int size, int steps, List<WorldSpec> specs) {
+            this.id = id;
+            this.size = size;
+            this.steps = steps;
+            this.specs = specs;
+        }
+
+        @Override
+        public void run() {
+            synchronized (this) {
+                if (state != State.QUEUED) {
+                    return;
+                }
+                state = State.RUNNING;
+            }
+            try {
+                Path ticks = Files.createTempFile(DIR, "job" + id + "-", ".ticks");
+                synchronized (this) {
+                    file = ticks;
+                }
+                // Only digits, commas and newlines: a char is a byte
+                try (Writer out = Files.newBufferedWriter(ticks, StandardCharsets.US_ASCII)) {
+                    StringBuilder tick = new StringBuilder();
+                    for (int w = 0; w < specs.size() && !cancelled; w++) {
+                        WorldSpec spec = specs.get(w);
+                        World model = new World(size, size, spec.seed());
+                        model.setup(spec.agentDensity(), spec.copDensity(), spec.k(), spec.threshold(), spec.legitimacy());
+                        world = w + 1;
+                        for (int step = 0; step < steps && !cancelled; step++) {
+                            model.tick();
+                            tick.setLength(0);
+                            tick.append(w).append(',').append(step).append(',').append(model.getActiveAgentCount())
+                                    .append(',').append(model.getJailedAgentCount()).append(',')
+                                    .append(model.getQuietAgentCount()).append('\n');
+                            out.append(tick);
+                            out.flush();
+                            synchronized (this) {
+                                written += tick.length();
+                                notifyAll();
+                            }
+                            progress = step + 1;
+                        }
+                    }
+                }
+                finish(cancelled ? State.CANCELLED : State.DONE, null);
+            } catch (IOException | RuntimeException | OutOfMemoryError e) {
+                finish(State.FAILED, e.toString());
+            }
+        }
+
+        void cancel() {
+            cancelled = true;
+            if (workers.remove(this)) {
+                finish(State.CANCELLED, null);
+            }
+        }
+
+        private void finish(State end, String message) {
+            synchronized (this) {
+                state = end;
+                error = message;
+                notifyAll();
+            }
+            retire(this);
+        }
+
+        synchronized State state() {
+            return state;
+        }
+
+        // Heap and disk held by the job once it has finished
+        synchronized long footprint() {
+            return (long) specs.size() * SPEC_BYTES + written;
+        }
+
+        synchronized void deleteFile() {
+            if (file != null) {
+                try {
+                    Files.deleteIfExists(file);
+                } catch (IOException e) {
+                    System.err.println("Error deleting " + file + ": " + e.getMessage());
+                }
+            }
+        }
+
+        /**
+         * Write the tick lines from the first one, then new ones until the job has finished
+         */
+        void stream(OutputStream out) throws IOException, InterruptedException {
+            long next = 0;
+            byte[] buffer = new byte[8192];
+            InputStream in = null;
+            try {
+                while (true) {
+                    long end;
+                    State now;
+                    synchronized (this) {
+                        while (next == written && !isFinished(state)) {
+                            wait();
+                        }
+                        end = written;
+                        now = state;
+                        if (in == null && end > next) {
+                            in = Files.newInputStream(file);
+                        }
+                    }
+                    while (next < end) {
+                        int n = in.read(buffer, 0, (int) Math.min(buffer.length, end - next));
+                        if (n < 0) {
+                            throw new EOFException("Tick file of job " + id + " ended early");
+                        }
+                        out.write(buffer, 0, n);
+                        next += n;
+                    }
+                    if (isFinished(now)) {
+                        out.write(("# " + now + (error != null ? " " + error : "") + "\n").getBytes(StandardCharsets.UTF_8));
+                        out.flush();
+                        return;
+                    }
+                    out.flush();
+                }
+            } finally {
+                if (in != null) {
+                    in.close();
+                }
+            }
+        }
+
+        String describe() {
+            StringBuilder s = new StringBuilder();
+            synchronized (this) {
+                s.append("job ").append(id).append(' ').append(state)
+                        .append(" world ").append(world).append('/').append(specs.size())
+                        .append(" tick ").append(progress).append('/').append(steps)
+                        .append(" size ").append(size);
+                if (error != null) {
+                    s.append(' ').append(error);
+                }
+            }
+            s.append("\nworld,seed,agentDensity,copDensity,k,threshold,legitimacy\n");
+            for (int w = 0; w < specs.size(); w++) {
+                WorldSpec spec = specs.get(w);
+                s.append(w).append(',').append(spec.seed()).append(',').append(spec.agentDensity()).append(',')
+                        .append(spec.copDensity()).append(',').append(spec.k()).append(',')
+                        .append(spec.threshold()).append(',').append(spec.legitimacy()).append('\n');
+            }
+            return s.toString();
+        }
+    }
+
+    public SimulationServer(int workerCount, int queueCapacity) {
+        AtomicInteger threadId = new AtomicInteger();
+        this.workers = new ThreadPoolExecutor(workerCount, workerCount, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(queueCapacity), r -> {
+                    Thread thread = new Thread(r, "worker-" + threadId.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    public static void main(String[] args) throws IOException {
+        SimulationServer server = new SimulationServer(WORKERS, QUEUE);
+
+        // Compile the tick before the first real job arrives
+        long t0 = System.nanoTime();
+        World warmup = new World(40, 40, 1);
+        warmup.setup(INITIAL_AGENT_DENSITY, INITIAL_COP_DENSITY, K, THRESHOLD, GOVERNMENT_LEGITIMACY);
+        for (int i = 0; i < 2000; i++) {
+            warmup.tick();
+        }
+
+        HttpServer http = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), PORT), 0);
+        http.createContext("/jobs", server::handle);
+        // Streaming readers block for as long as their job runs, so each gets its own thread
+        ExecutorService connections = Executors.newCachedThreadPool();
+        http.setExecutor(connections);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            http.stop(0);
+            server.workers.shutdownNow();
+            connections.shutdownNow();
+            for (Job job : server.jobs.values()) {
+                job.deleteFile();
+            }
+        }));
+        http.start();
+        System.out.printf("Listening on http://localhost:%d/jobs with %d workers (warm-up %.1f s)%n",
+                http.getAddress().getPort(), WORKERS, (System.nanoTime() - t0) / 1e9);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String[] path = exchange.getRequestURI().getPath().split("/");
+            String method = exchange.getRequestMethod();
+            if (path.length == 2 && method.equals("POST")) {
+                submit(exchange);
+                return;
+            }
+            Job job = path.length >= 3 ? lookup(path[2]) : null;
+            if (job == null) {
+                respond(exchange, 404, "No such job\n");
+            } else if (path.length == 3 && method.equals("GET")) {
+                respond(exchange, 200, job.describe());
+            } else if (path.length == 3 && method.equals("DELETE")) {
+                job.cancel();
+                respond(exchange, 200, "job " + job.id + " " + job.state() + "\n");
+            } else if (path.length == 4 && path[3].equals("ticks") && method.equals("GET")) {
+                stream(exchange, job, false);
+            } else {
+                respond(exchange, 405, "Unsupported request\n");
+            }
+        }
+    }
+
+    private void submit(HttpExchange exchange) throws IOException {
+        Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+        Job job;
+        try {
+            job = newJob(query);
+        } catch (IllegalArgumentException e) {
+            respond(exchange, 400, e.getMessage() + "\n");
+            return;
+        }
+        jobs.put(job.id, job);
+        try {
+            workers.execute(job);
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.id);
+            respond(exchange, 503, "Queue full (" + workers.getQueue().size() + " jobs waiting)\n");
+            return;
+        }
+        if (Boolean.parseBoolean(query.get("stream"))) {
+            stream(exchange, job, true);
+        } else {
+            respond(exchange, 202, "job " + job.id + "\n");
+        }
+    }
+
+    private Job newJob(Map<String, String> query) {
+        int size = parseInt(query, "size", 40);
+        int steps = parseInt(query, "steps", 200);
+        int replicates = parseInt(query, "replicates", 1);
+        if (size < 1 || steps < 0 || replicates < 1) {
+            throw new IllegalArgumentException("size and replicates must be positive, steps not negative");
+        }
+        long seed = query.containsKey("seed") ? parseLong(query, "seed") : new Random().nextLong();
+        double[] agentDensities = parseList(query, "agentDensity", INITIAL_AGENT_DENSITY, 0, 1);
+        double[] copDensities = parseList(query, "copDensity", INITIAL_COP_DENSITY, 0, 1);
+        double[] ks = parseList(query, "k", K, -Double.MAX_VALUE, Double.MAX_VALUE);
+        double[] thresholds = parseList(query, "threshold", THRESHOLD, -Double.MAX_VALUE, Double.MAX_VALUE);
+        double[] legitimacies = parseList(query, "legitimacy", GOVERNMENT_LEGITIMACY, 0, 1);
+        // Check the size of the job before anything is allocated for its worlds
+        long worlds, cells;
+        try {
+            worlds = Math.multiplyExact(Math.multiplyExact(Math.multiplyExact((long) agentDensities.length,
+                    copDensities.length), Math.multiplyExact((long) ks.length, thresholds.length)),
+                    Math.multiplyExact((long) legitimacies.length, replicates));
+            cells = Math.multiplyExact(Math.multiplyExact((long) size, size), worlds);
+        } catch (ArithmeticException e) {
+            worlds = Long.MAX_VALUE;
+            cells = Long.MAX_VALUE;
+        }
+        if (worlds > MAX_WORLDS || cells > MAX_CELLS) {
+            throw new IllegalArgumentException("Job too large: at most " + MAX_WORLDS + " worlds and " + MAX_CELLS
+                    + " cells over all worlds");
+        }
+        List<WorldSpec> specs = new ArrayList<>((int) worlds);
+        for (double agentDensity : agentDensities) {
+            for (double copDensity : copDensities) {
+                if (agentDensity + copDensity > 1) {
+                    throw new IllegalArgumentException("agentDensity + copDensity exceeds 1: " + agentDensity + " + " + copDensity);
+                }
+                for (double k : ks) {
+                    for (double threshold : thresholds) {
+                        for (double legitimacy : legitimacies) {
+                            for (int r = 0; r < replicates; r++) {
+                                specs.add(new WorldSpec(seed + r, agentDensity, copDensity, k, threshold, legitimacy));
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return new Job(nextId.getAndIncrement(), size, steps, specs);
+    }
+
+    private void stream(HttpExchange exchange, Job job, boolean submitted) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(200, 0);
+        OutputStream out = exchange.getResponseBody();
+        try {
+            String header = (submitted ? "job " + job.id + "\n" : "") + "world,tick,active,jailed,quiet\n";
+            out.write(header.getBytes(StandardCharsets.UTF_8));
+            job.stream(out);
+        } catch (IOException e) {
+            // The client went away: nobody else knows about a job submitted with stream=true
+            if (submitted) {
+                job.cancel();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Drop the oldest finished jobs beyond RETAIN jobs or RETAIN_BYTES, and their tick files
+    private synchronized void retire(Job job) {
+        finished.add(job);
+        retainedBytes += job.footprint();
+        while (finished.size() > RETAIN || (retainedBytes > RETAIN_BYTES && !finished.isEmpty())) {
+            Job oldest = finished.poll();
+            retainedBytes -= oldest.footprint();
+            jobs.remove(oldest.id);
+            oldest.deleteFile();
+        }
+    }
+
+    private Job lookup(String id) {
+        try {
+            return jobs.get(Long.parseLong(id));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static boolean isFinished(State state) {
+        return state != State.QUEUED && state != State.RUNNING;
+    }
+
+    private static Map<String, String> parseQuery(String query) {
+        Map<String, String> values = new HashMap<>();
+        if (query != null) {
+            for (String pair : query.split("&")) {
+                int eq = pair.indexOf('=');
+                if (eq > 0) {
+                    values.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+                            URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+                }
+            }
+        }
+        return values;
+    }
+
+    private static int parseInt(Map<String, String> query, String name, int fallback) {
+        try {
+            return query.containsKey(name) ? Integer.parseInt(query.get(name)) : fallback;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Bad " + name + ": " + query.get(name));
+        }
+    }
+
+    private static long parseLong(Map<String, String> query, String name) {
+        try {
+            return Long.parseLong(query.get(name));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Bad " + name + ": " + query.get(name));
+        }
+    }
+
+    // Comma-separated values, each finite and within [min, max]
+    private static double[] parseList(Map<String, String> query, String name, double fallback, double min, double max) {
+        if (!query.containsKey(name)) {
+            return new double[]{fallback};
+        }
+        String[] parts = query.get(name).split(",");
+        double[] values = new double[parts.length];
+        try {
+            for (int i = 0; i < parts.length; i++) {
+                values[i] = Double.parseDouble(parts[i].trim());
+                if (!(values[i] >= min && values[i] <= max)) {
+                    throw new NumberFormatException();
+                }
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Bad " + name + ": " + query.get(name));
+        }
+        return values;
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
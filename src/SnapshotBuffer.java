@@ -0,0 +1,28 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Double buffer between the simulation thread (one producer) and the GUI (one consumer).
+ * The producer appends snapshots to the back buffer; the consumer swaps buffers once per
+ * frame and reads the front buffer without holding the lock, so neither side waits on the other.
+ */
+public class SnapshotBuffer {
+    private List<TickSnapshot> back = new ArrayList<>();
+    private List<TickSnapshot> front = new ArrayList<>();
+
+    public synchronized void publish(TickSnapshot snapshot) {
+        back.add(snapshot);
+    }
+
+    /**
+     * Returns every snapshot published since the previous swap.
+     * The returned list stays valid until the next call.
+     */
+    public synchronized List<TickSnapshot> swap() {
+        List<TickSnapshot> drained = back;
+        front.clear();
+        back = front;
+        front = drained;
+        return drained;
+    }
+}
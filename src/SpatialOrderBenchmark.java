@@ -0,0 +1,141 @@
+import entity.World;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static entity.AppConfig.*;
+
+/**
+ * Benchmark of World.setSpatialReorder on large grids: time per tick and, when Linux perf is
+ * available, hardware cache misses per tick, with the creation order against space-filling-curve
+ * order. Every measurement runs in a fresh JVM, so the modes do not share JIT state or heap. The
+ * counters cover the whole child process, so each mode runs twice, with and without the measured
+ * ticks after the same warm-up, and the difference divided by the ticks is reported: setup, JIT
+ * and warm-up cancel out.
+ *
+ * Reordering stores turtles along a space-filling curve, so that consecutive turtles in the move,
+ * behavior and enforce loops read overlapping vision stencils of the per-cell arrays instead of
+ * cells all over the grid. It changes the order in which turtles act: runs with the same seed
+ * differ from runs without it (and between intervals), though the model is the same. A plain curve
+ * order would sweep the grid in the same direction every tick, so the curve is cut into tiles whose
+ * visiting order is shuffled with the world's Random at every reorder; the order stays random at
+ * the scale of the tiles and runs stay reproducible. getAgents and getCops keep the creation order.
+ *
+ * -Drebellion.locality.sizes (comma separated), .interval, .warmup, .ticks, .perf (the perf
+ * executable) and -Drebellion.seed override the defaults.
+ */
+public class SpatialOrderBenchmark {
+    private static final int[] SIZES = Arrays.stream(System.getProperty("rebellion.locality.sizes", "200,400").split(","))
+            .map(String::trim).mapToInt(Integer::parseInt).toArray();
+    private static final int INTERVAL = Integer.getInteger("rebellion.locality.interval", 50);
+    private static final int WARMUP = Integer.getInteger("rebellion.locality.warmup", 100);
+    private static final int TICKS = Integer.getInteger("rebellion.locality.ticks", 100);
+    private static final String PERF = System.getProperty("rebellion.locality.perf", "perf");
+    private static final long SEED = Long.getLong("rebellion.seed", System.nanoTime());
+    private static final String[] EVENTS = {"cache-misses", "cache-references", "instructions"};
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length == 5 && args[0].equals("--child")) {
+            child(Integer.parseInt(args[1]), Integer.parseInt(args[2]), Integer.parseInt(args[3]), Integer.parseInt(args[4]));
+            return;
+        }
+
+        boolean perf = perfAvailable();
+        if (!perf) {
+            System.out.println("perf not found or not permitted: hardware counters are not measured "
+                    + "(install linux perf or set -Drebellion.locality.perf)");
+        }
+        System.out.printf("%d warm-up ticks, %d measured ticks, seed %d, reorder every %d ticks%n",
+                WARMUP, TICKS, SEED, INTERVAL);
+        System.out.printf("%-10s %-10s %10s %16s %16s %16s%n", "Size", "Order", "us/tick",
+                "misses/tick", "refs/tick", "instr/tick");
+        for (int size : SIZES) {
+            for (int interval : new int[]{0, INTERVAL}) {
+                Run measured = run(size, interval, TICKS, perf);
+                String order = interval == 0 ? "creation" : "curve";
+                if (!perf) {
+                    System.out.printf("%-10s %-10s %10.1f %16s %16s %16s%n", size + "x" + size, order,
+                            measured.nanosPerTick / 1e3, "-", "-", "-");
+                    continue;
+                }
+                Run baseline = run(size, interval, 0, perf);
+                double[] perTick = new double[EVENTS.length];
+                for (int e = 0; e < EVENTS.length; e++) {
+                    perTick[e] = measured.counters[e] < 0 || baseline.counters[e] < 0 ? Double.NaN
+                            : (double) (measured.counters[e] - baseline.counters[e]) / TICKS;
+                }
+                System.out.printf("%-10s %-10s %10.1f %16.0f %16.0f %16.0f%n", size + "x" + size, order,
+                        measured.nanosPerTick / 1e3, perTick[0], perTick[1], perTick[2]);
+            }
+        }
+    }
+
+    private static final class Run {
+        double nanosPerTick;
+        long[] counters = new long[EVENTS.length];
+    }
+
+    private static Run run(int size, int interval, int ticks, boolean perf) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        if (perf) {
+            command.addAll(List.of(PERF, "stat", "-x,", "-e", String.join(",", EVENTS), "--"));
+        }
+        command.add(ProcessHandle.current().info().command().orElse("java"));
+        command.addAll(List.of("-cp", System.getProperty("java.class.path"), "-Drebellion.seed=" + SEED,
+                SpatialOrderBenchmark.class.getName(), "--child", String.valueOf(size), String.valueOf(interval),
+                String.valueOf(WARMUP), String.valueOf(ticks)));
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+
+        Run run = new Run();
+        Arrays.fill(run.counters, -1);
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("RESULT ")) {
+                    run.nanosPerTick = Double.parseDouble(line.substring(7));
+                    continue;
+                }
+                // perf stat -x, lines: value,unit,event,...
+                String[] fields = line.split(",");
+                for (int e = 0; fields.length > 2 && e < EVENTS.length; e++) {
+                    if (fields[2].startsWith(EVENTS[e]) && fields[0].matches("\\d+")) {
+                        run.counters[e] = Long.parseLong(fields[0]);
+                    }
+                }
+            }
+        }
+        if (process.waitFor() != 0) {
+            throw new IOException("Benchmark child failed: " + String.join(" ", command));
+        }
+        return run;
+    }
+
+    private static boolean perfAvailable() throws InterruptedException {
+        try {
+            Process process = new ProcessBuilder(PERF, "stat", "-x,", "-e", EVENTS[0], "--", "true")
+                    .redirectErrorStream(true).start();
+            String output = new String(process.getInputStream().readAllBytes());
+            return process.waitFor() == 0 && !output.contains("<not supported>") && !output.contains("<not counted>");
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static void child(int size, int interval, int warmup, int ticks) {
+        World world = new World(size, size, SEED);
+        world.setup(INITIAL_AGENT_DENSITY, INITIAL_COP_DENSITY, K, THRESHOLD, GOVERNMENT_LEGITIMACY);
+        world.setSpatialReorder(interval);
+        for (int i = 0; i < warmup; i++) {
+            world.tick();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ticks; i++) {
+            world.tick();
+        }
+        System.out.println("RESULT " + (ticks == 0 ? 0 : (double) (System.nanoTime() - start) / ticks));
+    }
+}
@@ -0,0 +1,64 @@
+import engine.MappedWorldView;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Paths;
+
+/**
+ * Watches a world that Main --mapped is running, from a separate process, by mapping its state file
+ * read-only: nothing is copied and the simulation is not slowed down.
+ *
+ * StateInspector <file> [--follow] [--png <out.png> <x> <y> <size>]
+ * prints the statistics of the last completed tick (every new tick until the run finishes with
+ * --follow) and can write a size x size window of the map at (x, y) as a PNG.
+ */
+public class StateInspector {
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 1) {
+            System.err.println("Usage: StateInspector <file> [--follow] [--png <out.png> <x> <y> <size>]");
+            return;
+        }
+        boolean follow = false;
+        String png = null;
+        int x = 0, y = 0, size = 0;
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("--follow")) {
+                follow = true;
+            } else if (args[i].equals("--png") && i + 4 < args.length) {
+                png = args[i + 1];
+                x = Integer.parseInt(args[i + 2]);
+                y = Integer.parseInt(args[i + 3]);
+                size = Integer.parseInt(args[i + 4]);
+                i += 4;
+            }
+        }
+
+        try (MappedWorldView view = new MappedWorldView(Paths.get(args[0]))) {
+            System.out.printf("%dx%d world, seed %d%n", view.getWidth(), view.getHeight(), view.getSeed());
+            MappedWorldView.Stats stats = view.stats();
+            print(stats);
+            while (follow && !stats.finished()) {
+                Thread.sleep(50);
+                MappedWorldView.Stats next = view.stats();
+                if (next.ticks() != stats.ticks() || next.finished()) {
+                    print(next);
+                }
+                stats = next;
+            }
+
+            if (png != null) {
+                size = Math.min(size, Math.min(view.getWidth(), view.getHeight()));
+                byte[] cells = new byte[size * size];
+                view.snapshotCells(x, y, size, size, cells);
+                WorldRaster raster = new WorldRaster(size, size, Math.max(1, 512 / size));
+                raster.update(cells);
+                raster.writePng(new File(png));
+            }
+        }
+    }
+
+    private static void print(MappedWorldView.Stats s) {
+        System.out.printf("tick %d: active %d, jailed %d, quiet %d, cops %d%s%n",
+                s.ticks(), s.active(), s.jailed(), s.quiet(), s.cops(), s.finished() ? " (finished)" : "");
+    }
+}
@@ -0,0 +1,198 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Asynchronous per-tick output: the simulation thread publishes TickSnapshots into a bounded
+ * lock-free ring buffer, every consumer drains it on its own thread with its own cursor.
+ * Single producer. What happens when a consumer falls a full ring behind is chosen per consumer:
+ * BLOCK makes the producer wait for it, DROP skips the records that were overwritten,
+ * SAMPLE jumps straight to the newest record. Waiting threads park until they are signalled:
+ * an idle consumer by the next publish or close, a blocked producer by the consumer it waits for.
+ */
+public class TickPipeline implements AutoCloseable {
+    public enum Backpressure { BLOCK, DROP, SAMPLE }
+
+    public interface Consumer {
+        void accept(TickSnapshot snapshot) throws Exception;
+
+        // Called on the consumer thread after the last record
+        default void close() throws Exception {
+        }
+    }
+
+    private final AtomicReferenceArray<TickSnapshot> ring;
+    private final int size;
+    private final int mask;
+    private final AtomicLong cursor = new AtomicLong(-1);   //last published sequence
+    private final List<Subscriber> subscribers = new ArrayList<>();
+    private volatile boolean closed = false;
+    private boolean started = false;
+    private volatile Thread producer;
+    private volatile boolean producerParked = false;
+
+    /**
+     * @param capacity ring size, rounded up to a power of two
+     */
+    public TickPipeline(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.ring = new AtomicReferenceArray<>(size);
+        this.size = size;
+        this.mask = size - 1;
+    }
+
+    /**
+     * Register a consumer; must be called before the first publish
+     */
+    public TickPipeline addConsumer(String name, Backpressure policy, Consumer consumer) {
+        if (started) {
+            throw new IllegalStateException("Consumers must be added before publishing");
+        }
+        subscribers.add(new Subscriber(name, policy, consumer));
+        return this;
+    }
+
+    public void publish(TickSnapshot snapshot) {
+        if (!started) {
+            started = true;
+            producer = Thread.currentThread();
+            for (Subscriber s : subscribers) {
+                s.thread.start();
+            }
+        }
+        long seq = cursor.get() + 1;
+        // Wait until every BLOCK consumer has released the slot we are about to overwrite; the flag is
+        // set before the check, so a consumer that advances after the check sees it and unparks us
+        while (seq - size > minBlockingSequence()) {
+            producerParked = true;
+            if (seq - size > minBlockingSequence()) {
+                LockSupport.park(this);
+            }
+            producerParked = false;
+        }
+        // Release store: a consumer that sees this record also sees cursor >= seq - 1
+        ring.setRelease((int) (seq & mask), snapshot);
+        // Volatile store before reading the parked flags, pairing with the consumer's flag-then-cursor
+        cursor.set(seq);
+        for (Subscriber s : subscribers) {
+            if (s.parked) {
+                LockSupport.unpark(s.thread);
+            }
+        }
+    }
+
+    private long minBlockingSequence() {
+        long min = Long.MAX_VALUE;
+        for (Subscriber s : subscribers) {
+            if (s.policy == Backpressure.BLOCK) {
+                min = Math.min(min, s.sequence.get());
+            }
+        }
+        return min;
+    }
+
+    /**
+     * Number of records the named consumer skipped (DROP and SAMPLE only)
+     */
+    public long getDropped(String name) {
+        for (Subscriber s : subscribers) {
+            if (s.name.equals(name)) {
+                return s.dropped;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Stop accepting records, let every consumer drain what was published and wait for them.
+     * If the caller is interrupted it stops waiting with its interrupt flag set; the consumers
+     * still drain and close on their own threads
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (Subscriber s : subscribers) {
+            LockSupport.unpark(s.thread);
+        }
+        for (Subscriber s : subscribers) {
+            if (!started) {
+                s.closeConsumer();
+                continue;
+            }
+            try {
+                s.thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private class Subscriber implements Runnable {
+        final String name;
+        final Backpressure policy;
+        final Consumer consumer;
+        final AtomicLong sequence = new AtomicLong(-1);    //last consumed sequence
+        final Thread thread;
+        volatile long dropped = 0;
+        volatile boolean parked = false;     //waiting for a publish or close
+
+        Subscriber(String name, Backpressure policy, Consumer consumer) {
+            this.name = name;
+            this.policy = policy;
+            this.consumer = consumer;
+            this.thread = new Thread(this, "pipeline-" + name);
+        }
+
+        @Override
+        public void run() {
+            // A lossy consumer only trusts records more than one slot away from being overwritten
+            int window = size - 1;
+            long next = 0;
+            while (true) {
+                long available = cursor.get();
+                if (available < next) {
+                    if (closed && cursor.get() < next) {
+                        break;
+                    }
+                    parked = true;
+                    if (!closed && cursor.get() < next) {
+                        LockSupport.park(this);
+                    }
+                    parked = false;
+                    continue;
+                }
+                if (policy != Backpressure.BLOCK && available - next >= window) {
+                    long skipTo = policy == Backpressure.DROP ? available - window + 1 : available;
+                    dropped += skipTo - next;
+                    next = skipTo;
+                }
+                TickSnapshot snapshot = ring.getAcquire((int) (next & mask));
+                if (policy != Backpressure.BLOCK && cursor.get() - next >= window) {
+                    continue;   // overwritten while we read it, catch up again
+                }
+                try {
+                    consumer.accept(snapshot);
+                } catch (Exception e) {
+                    System.err.println("Error in " + name + " consumer: " + e.getMessage());
+                }
+                sequence.set(next);
+                if (policy == Backpressure.BLOCK && producerParked) {
+                    LockSupport.unpark(producer);
+                }
+                next++;
+            }
+            closeConsumer();
+        }
+
+        void closeConsumer() {
+            try {
+                consumer.close();
+            } catch (Exception e) {
+                System.err.println("Error closing " + name + " consumer: " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,5 @@
+/**
+ * Immutable statistics of one simulation tick, published by the simulation thread
+ */
+public record TickSnapshot(int tick, int active, int jailed, int quiet, int cops) {
+}
@@ -0,0 +1,270 @@
+import entity.World;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads a file written by TrajectoryRecorder. stateAt(tick) seeks to the chunk holding the tick
+ * through the index, decompresses it and applies its deltas from the keyframe, so any tick is
+ * rebuilt from at most CHUNK_TICKS - 1 deltas instead of re-simulating the run up to it.
+ */
+public class TrajectoryReader implements Closeable {
+    /**
+     * Full turtle state at one tick, in World's agent and cop order
+     */
+    public static final class State {
+        public final int tick;
+        public final int width, height;
+        public final int[] agentX, agentY, jailTerm;
+        public final boolean[] active;
+        public final int[] copX, copY;
+
+        State(int tick, int width, int height, int agents, int cops) {
+            this.tick = tick;
+            this.width = width;
+            this.height = height;
+            agentX = new int[agents];
+            agentY = new int[agents];
+            jailTerm = new int[agents];
+            active = new boolean[agents];
+            copX = new int[cops];
+            copY = new int[cops];
+        }
+
+        public int getActiveAgentCount() {
+            int count = 0;
+            for (int a = 0; a < active.length; a++) {
+                if (active[a] && jailTerm[a] == 0) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        public int getJailedAgentCount() {
+            int count = 0;
+            for (int term : jailTerm) {
+                if (term > 0) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        public int getQuietAgentCount() {
+            return active.length - getActiveAgentCount() - getJailedAgentCount();
+        }
+
+        /**
+         * Same cell states as World.snapshotCells
+         */
+        public void snapshotCells(byte[] cells) {
+            Arrays.fill(cells, World.CELL_EMPTY);
+            for (int a = 0; a < active.length; a++) {
+                int cell = agentX[a] * height + agentY[a];
+                byte state = jailTerm[a] > 0 ? World.CELL_JAILED : active[a] ? World.CELL_ACTIVE : World.CELL_QUIET;
+                if (state > cells[cell]) {
+                    cells[cell] = state;
+                }
+            }
+            for (int c = 0; c < copX.length; c++) {
+                cells[copX[c] * height + copY[c]] = World.CELL_COP;
+            }
+        }
+    }
+
+    private final FileChannel channel;
+    private final int width, height, agents, cops;
+    private final int[] chunkFirstTick, chunkTicks;
+    private final long[] chunkOffset;
+    private final Inflater inflater = new Inflater();
+
+    // Last decompressed chunk, so reading ticks in order does not inflate a chunk per tick
+    private int cachedChunk = -1;
+    private byte[] cachedBytes;
+
+    public TrajectoryReader(Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            ByteBuffer header = read(0, 7 * 4);
+            if (header.getInt() != TrajectoryRecorder.MAGIC || header.getInt() != TrajectoryRecorder.FORMAT) {
+                throw new IOException("Not a trajectory file: " + path);
+            }
+            width = header.getInt();
+            height = header.getInt();
+            agents = header.getInt();
+            cops = header.getInt();
+            header.getInt();
+
+            ByteBuffer footer = read(channel.size() - 12, 12);
+            long indexOffset = footer.getLong();
+            if (footer.getInt() != TrajectoryRecorder.END_MAGIC) {
+                throw new IOException("Trajectory file has no index (recorder not closed?): " + path);
+            }
+            int count = read(indexOffset, 4).getInt();
+            ByteBuffer index = read(indexOffset + 4, count * 16);
+            chunkFirstTick = new int[count];
+            chunkTicks = new int[count];
+            chunkOffset = new long[count];
+            for (int i = 0; i < count; i++) {
+                chunkFirstTick[i] = index.getInt();
+                chunkTicks[i] = index.getInt();
+                chunkOffset[i] = index.getLong();
+            }
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public int getFirstTick() {
+        return chunkFirstTick.length == 0 ? 0 : chunkFirstTick[0];
+    }
+
+    public int getLastTick() {
+        int last = chunkFirstTick.length - 1;
+        return last < 0 ? 0 : chunkFirstTick[last] + chunkTicks[last] - 1;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * State of every turtle at the given tick (between getFirstTick and getLastTick)
+     */
+    public State stateAt(int tick) throws IOException {
+        int chunk = Arrays.binarySearch(chunkFirstTick, tick);
+        if (chunk < 0) {
+            chunk = -chunk - 2;
+        }
+        if (chunk < 0 || tick > chunkFirstTick[chunk] + chunkTicks[chunk] - 1) {
+            throw new IllegalArgumentException("Tick " + tick + " not recorded (" + getFirstTick() + ".." + getLastTick() + ")");
+        }
+        Decoder in = new Decoder(chunkBytes(chunk));
+        State state = new State(tick, width, height, agents, cops);
+
+        // Keyframe
+        for (int a = 0; a < agents; a++) {
+            state.agentX[a] = in.readVarint();
+            state.agentY[a] = in.readVarint();
+            state.active[a] = in.readByte() != 0;
+            state.jailTerm[a] = in.readVarint();
+        }
+        for (int c = 0; c < cops; c++) {
+            state.copX[c] = in.readVarint();
+            state.copY[c] = in.readVarint();
+        }
+
+        // Deltas up to the tick
+        for (int t = chunkFirstTick[chunk] + 1; t <= tick; t++) {
+            for (int a = 0; a < agents; a++) {
+                state.jailTerm[a] = Math.max(0, state.jailTerm[a] - 1);
+            }
+            int changed = in.readVarint();
+            int a = -1;
+            for (int i = 0; i < changed; i++) {
+                a += in.readVarint() + 1;
+                int flags = in.readByte();
+                if ((flags & TrajectoryRecorder.MOVED) != 0) {
+                    state.agentX[a] = Math.floorMod(state.agentX[a] + in.readSignedVarint(), width);
+                    state.agentY[a] = Math.floorMod(state.agentY[a] + in.readSignedVarint(), height);
+                }
+                if ((flags & TrajectoryRecorder.ACTIVE_FLIPPED) != 0) {
+                    state.active[a] = !state.active[a];
+                }
+                if ((flags & TrajectoryRecorder.JAIL_SET) != 0) {
+                    state.jailTerm[a] = in.readVarint();
+                }
+            }
+            changed = in.readVarint();
+            int c = -1;
+            for (int i = 0; i < changed; i++) {
+                c += in.readVarint() + 1;
+                state.copX[c] = Math.floorMod(state.copX[c] + in.readSignedVarint(), width);
+                state.copY[c] = Math.floorMod(state.copY[c] + in.readSignedVarint(), height);
+            }
+        }
+        return state;
+    }
+
+    private byte[] chunkBytes(int chunk) throws IOException {
+        if (chunk == cachedChunk) {
+            return cachedBytes;
+        }
+        ByteBuffer lengths = read(chunkOffset[chunk], 8);
+        int rawLength = lengths.getInt();
+        int compressedLength = lengths.getInt();
+        ByteBuffer compressed = read(chunkOffset[chunk] + 8, compressedLength);
+        byte[] raw = new byte[rawLength];
+        inflater.reset();
+        inflater.setInput(compressed.array(), 0, compressedLength);
+        try {
+            int n = 0;
+            while (n < rawLength && !inflater.finished()) {
+                n += inflater.inflate(raw, n, rawLength - n);
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt trajectory chunk " + chunk, e);
+        }
+        cachedChunk = chunk;
+        cachedBytes = raw;
+        return raw;
+    }
+
+    private ByteBuffer read(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Truncated trajectory file");
+            }
+        }
+        return buffer.flip();
+    }
+
+    @Override
+    public void close() throws IOException {
+        inflater.end();
+        channel.close();
+    }
+
+    private static final class Decoder {
+        private final byte[] bytes;
+        private int position = 0;
+
+        Decoder(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        int readByte() {
+            return bytes[position++] & 0xFF;
+        }
+
+        int readVarint() {
+            int value = 0;
+            for (int shift = 0; ; shift += 7) {
+                int b = bytes[position++];
+                value |= (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+        }
+
+        int readSignedVarint() {
+            int v = readVarint();
+            return (v >>> 1) ^ -(v & 1);
+        }
+    }
+}
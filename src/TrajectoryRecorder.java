@@ -0,0 +1,269 @@
+import entity.Agent;
+import entity.Cop;
+import entity.World;
+import metrics.TickMetrics;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
+
+/**
+ * Records the per-agent history of a run (position, active flag, jail term, and cop positions)
+ * compactly enough to keep whole runs:
+ * - ticks are grouped into chunks of CHUNK_TICKS, each deflate-compressed on its own
+ * - a chunk starts with a keyframe (full state of its first tick), later ticks only list the turtles
+ *   whose state changed, by index gap, with positions as varint offsets from the previous tick
+ *   (shortest way around the torus) and jail terms only when they did not just count down by one
+ * - an index of chunk offsets at the end of the file lets TrajectoryReader seek to any tick
+ *
+ * File: header (MAGIC, FORMAT, width, height, agents, cops, CHUNK_TICKS), chunks (raw length,
+ * compressed length, bytes), index (chunk count, then first tick, tick count and offset per chunk),
+ * index offset and END_MAGIC.
+ */
+public class TrajectoryRecorder implements Closeable {
+    static final int MAGIC = 0x52425452;        //"RBTR"
+    static final int END_MAGIC = 0x52425445;    //"RBTE"
+    static final int FORMAT = 1;
+    static final int CHUNK_TICKS = 64;
+
+    // Flags of a changed agent in a delta tick
+    static final int MOVED = 1, ACTIVE_FLIPPED = 2, JAIL_SET = 4;
+
+    private final World world;
+    private final List<Agent> agents;
+    private final List<Cop> cops;
+    private final DataOutputStream out;
+    private long offset;                        //bytes written so far
+    private final Deflater deflater = new Deflater();
+    private final VarintBuffer chunk = new VarintBuffer();
+    private int chunkFirstTick = -1, chunkTicks = 0;
+    private final List<long[]> index = new ArrayList<>();    //first tick, tick count, offset
+
+    // State at the previously recorded tick
+    private final int[] x, y, jailTerm, copX, copY;
+    private final boolean[] active;
+
+    /**
+     * Start recording the world; its current state is recorded as the first tick
+     */
+    public TrajectoryRecorder(Path path, World world) throws IOException {
+        this.world = world;
+        this.agents = world.getAgents();
+        this.cops = world.getCops();
+        x = new int[agents.size()];
+        y = new int[agents.size()];
+        jailTerm = new int[agents.size()];
+        active = new boolean[agents.size()];
+        copX = new int[cops.size()];
+        copY = new int[cops.size()];
+
+        out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)));
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT);
+        out.writeInt(world.getWidth());
+        out.writeInt(world.getHeight());
+        out.writeInt(agents.size());
+        out.writeInt(cops.size());
+        out.writeInt(CHUNK_TICKS);
+        offset = 7 * 4;
+        record();
+    }
+
+    /**
+     * Record the current state of the world (call after every tick)
+     */
+    public void record() throws IOException {
+        long t = TickMetrics.start();
+        if (chunkTicks == CHUNK_TICKS) {
+            flushChunk();
+        }
+        if (chunkTicks == 0) {
+            chunkFirstTick = world.getTicks();
+            writeKeyframe();
+        } else {
+            writeDelta();
+        }
+        chunkTicks++;
+        TickMetrics.lap(TickMetrics.OUTPUT, t);
+    }
+
+    private void writeKeyframe() {
+        for (int a = 0; a < agents.size(); a++) {
+            Agent agent = agents.get(a);
+            x[a] = agent.getLocation().getX();
+            y[a] = agent.getLocation().getY();
+            active[a] = agent.isActive();
+            jailTerm[a] = agent.getJail_term();
+            chunk.writeVarint(x[a]);
+            chunk.writeVarint(y[a]);
+            chunk.write(active[a] ? 1 : 0);
+            chunk.writeVarint(jailTerm[a]);
+        }
+        for (int c = 0; c < cops.size(); c++) {
+            copX[c] = cops.get(c).getLocation().getX();
+            copY[c] = cops.get(c).getLocation().getY();
+            chunk.writeVarint(copX[c]);
+            chunk.writeVarint(copY[c]);
+        }
+    }
+
+    private void writeDelta() {
+        int width = world.getWidth(), height = world.getHeight();
+        // Count first, so the reader knows how many entries follow
+        int changed = 0;
+        for (int a = 0; a < agents.size(); a++) {
+            if (flags(a) != 0) {
+                changed++;
+            }
+        }
+        chunk.writeVarint(changed);
+        int last = -1;
+        for (int a = 0; a < agents.size(); a++) {
+            int flags = flags(a);
+            if (flags == 0) {
+                jailTerm[a] = Math.max(0, jailTerm[a] - 1);
+                continue;
+            }
+            Agent agent = agents.get(a);
+            chunk.writeVarint(a - last - 1);
+            last = a;
+            chunk.write(flags);
+            if ((flags & MOVED) != 0) {
+                int nx = agent.getLocation().getX(), ny = agent.getLocation().getY();
+                chunk.writeSignedVarint(wrap(nx - x[a], width));
+                chunk.writeSignedVarint(wrap(ny - y[a], height));
+                x[a] = nx;
+                y[a] = ny;
+            }
+            if ((flags & ACTIVE_FLIPPED) != 0) {
+                active[a] = !active[a];
+            }
+            jailTerm[a] = agent.getJail_term();
+            if ((flags & JAIL_SET) != 0) {
+                chunk.writeVarint(jailTerm[a]);
+            }
+        }
+
+        changed = 0;
+        for (int c = 0; c < cops.size(); c++) {
+            if (copMoved(c)) {
+                changed++;
+            }
+        }
+        chunk.writeVarint(changed);
+        last = -1;
+        for (int c = 0; c < cops.size(); c++) {
+            if (!copMoved(c)) {
+                continue;
+            }
+            int nx = cops.get(c).getLocation().getX(), ny = cops.get(c).getLocation().getY();
+            chunk.writeVarint(c - last - 1);
+            last = c;
+            chunk.writeSignedVarint(wrap(nx - copX[c], width));
+            chunk.writeSignedVarint(wrap(ny - copY[c], height));
+            copX[c] = nx;
+            copY[c] = ny;
+        }
+    }
+
+    // What changed for agent a since the previous tick; a jail term counting down by one is implied
+    private int flags(int a) {
+        Agent agent = agents.get(a);
+        int flags = 0;
+        if (agent.getLocation().getX() != x[a] || agent.getLocation().getY() != y[a]) {
+            flags |= MOVED;
+        }
+        if (agent.isActive() != active[a]) {
+            flags |= ACTIVE_FLIPPED;
+        }
+        if (agent.getJail_term() != Math.max(0, jailTerm[a] - 1)) {
+            flags |= JAIL_SET;
+        }
+        return flags;
+    }
+
+    private boolean copMoved(int c) {
+        return cops.get(c).getLocation().getX() != copX[c] || cops.get(c).getLocation().getY() != copY[c];
+    }
+
+    // Shortest offset on a ring of the given size
+    private static int wrap(int d, int size) {
+        if (d > size / 2) {
+            return d - size;
+        }
+        if (d < -size / 2) {
+            return d + size;
+        }
+        return d;
+    }
+
+    private void flushChunk() throws IOException {
+        if (chunkTicks == 0) {
+            return;
+        }
+        deflater.reset();
+        deflater.setInput(chunk.buffer(), 0, chunk.size());
+        deflater.finish();
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(chunk.size() / 2 + 64);
+        byte[] block = new byte[8192];
+        while (!deflater.finished()) {
+            int n = deflater.deflate(block);
+            compressed.write(block, 0, n);
+        }
+        index.add(new long[]{chunkFirstTick, chunkTicks, offset});
+        out.writeInt(chunk.size());
+        out.writeInt(compressed.size());
+        compressed.writeTo(out);
+        offset += 8 + compressed.size();
+        chunk.reset();
+        chunkTicks = 0;
+    }
+
+    /**
+     * Write the last chunk and the index
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flushChunk();
+            long indexOffset = offset;
+            out.writeInt(index.size());
+            for (long[] entry : index) {
+                out.writeInt((int) entry[0]);
+                out.writeInt((int) entry[1]);
+                out.writeLong(entry[2]);
+            }
+            out.writeLong(indexOffset);
+            out.writeInt(END_MAGIC);
+        } finally {
+            deflater.end();
+            out.close();
+        }
+    }
+
+    // Growable byte buffer with LEB128 varints (zigzag for signed values)
+    static final class VarintBuffer extends ByteArrayOutputStream {
+        void writeVarint(int value) {
+            while ((value & ~0x7F) != 0) {
+                write((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            write(value);
+        }
+
+        void writeSignedVarint(int value) {
+            writeVarint((value << 1) ^ (value >> 31));
+        }
+
+        byte[] buffer() {
+            return buf;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+import entity.World;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Renders the world state straight into the int[] raster of a BufferedImage,
+ * one scale x scale block per cell. Only cells whose state changed since the
+ * previous frame are written; a World reports which cells those can be, so a frame
+ * does not scan the grid. Needs no display, so it also exports frames headlessly.
+ */
+public class WorldRaster {
+    // Same palette as the NetLogo model: gray background, green quiet, red active, black jailed, blue cops
+    private static final int[] COLORS = {0x5A5A5A, 0x000000, 0x2CA02C, 0xE02020, 0x3050FF};
+
+    private final int width, height, scale;
+    private final BufferedImage image;
+    private final int[] pixels;
+    private final byte[] shown;     // cell states currently drawn in the raster
+    private final byte[] cells;     // scratch for the latest cell states
+    private final int[] changed;    // scratch for the indices of the cells a World reports as changed
+    private World tracked;          // world whose changed cells this raster consumes
+
+    public WorldRaster(int width, int height, int scale) {
+        this.width = width;
+        this.height = height;
+        this.scale = scale;
+        this.image = new BufferedImage(width * scale, height * scale, BufferedImage.TYPE_INT_RGB);
+        this.pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        this.shown = new byte[width * height];
+        this.cells = new byte[width * height];
+        this.changed = new int[width * height];
+        for (int cell = 0; cell < shown.length; cell++) {
+            fillCell(cell, COLORS[World.CELL_EMPTY]);
+        }
+    }
+
+    public BufferedImage getImage() {
+        return image;
+    }
+
+    /**
+     * Read the states of the cells that changed in the world since the previous call and redraw
+     * them. The raster takes over the world's changed cells (World.trackChangedCells), so nothing
+     * else may consume them
+     */
+    public void update(World world) {
+        if (world != tracked) {
+            world.trackChangedCells();
+            tracked = world;
+        }
+        update(cells, changed, world.changedCells(cells, changed));
+    }
+
+    /**
+     * Redraw the listed cells whose state differs from the last frame
+     * @return number of cells redrawn
+     */
+    public int update(byte[] states, int[] indices, int count) {
+        int redrawn = 0;
+        for (int i = 0; i < count; i++) {
+            int cell = indices[i];
+            if (states[cell] != shown[cell]) {
+                shown[cell] = states[cell];
+                fillCell(cell, COLORS[states[cell]]);
+                redrawn++;
+            }
+        }
+        return redrawn;
+    }
+
+    /**
+     * Redraw the cells whose state differs from the last frame (index x * height + y)
+     * @return number of cells redrawn
+     */
+    public int update(byte[] states) {
+        int changed = 0;
+        for (int cell = 0; cell < states.length; cell++) {
+            if (states[cell] != shown[cell]) {
+                shown[cell] = states[cell];
+                fillCell(cell, COLORS[states[cell]]);
+                changed++;
+            }
+        }
+        return changed;
+    }
+
+    private void fillCell(int cell, int rgb) {
+        int x = cell / height, y = cell % height;
+        int rowStride = width * scale;
+        int start = y * scale * rowStride + x * scale;
+        for (int row = 0; row < scale; row++) {
+            int offset = start + row * rowStride;
+            for (int col = 0; col < scale; col++) {
+                pixels[offset + col] = rgb;
+            }
+        }
+    }
+
+    public void writePng(File file) throws IOException {
+        ImageIO.write(image, "png", file);
+    }
+
+    /**
+     * Run the world headlessly for the given steps and write every frame as a PNG into dir
+     */
+    public static void exportFrames(World world, int steps, int scale, Path dir) throws IOException {
+        Files.createDirectories(dir);
+        WorldRaster raster = new WorldRaster(world.getWidth(), world.getHeight(), scale);
+        raster.update(world);
+        raster.writePng(dir.resolve(String.format("frame_%05d.png", 0)).toFile());
+        for (int step = 1; step <= steps; step++) {
+            world.tick();
+            raster.update(world);
+            raster.writePng(dir.resolve(String.format("frame_%05d.png", step)).toFile());
+        }
+    }
+}
@@ -0,0 +1,63 @@
+import entity.World;
+
+import javax.swing.*;
+import java.awt.*;
+
+/**
+ * Live map of the world. The simulation thread captures the states of the cells that changed
+ * between ticks (only when the view asked for a new frame), the EDT redraws them.
+ */
+public class WorldView extends JPanel {
+    private final WorldRaster raster;
+    private final byte[] captured;
+    private final int[] changed;    // cells captured since the last refresh, changedCount of them
+    private int changedCount = 0;
+    private World tracked;
+    private boolean fresh = false;
+    private volatile boolean wanted = true;
+
+    public WorldView(int width, int height, int scale) {
+        this.raster = new WorldRaster(width, height, scale);
+        this.captured = new byte[width * height];
+        this.changed = new int[width * height];
+        setPreferredSize(new Dimension(width * scale, height * scale));
+    }
+
+    /**
+     * Called by the simulation thread after a tick
+     */
+    public void capture(World world) {
+        if (!wanted) {
+            return;
+        }
+        wanted = false;
+        synchronized (captured) {
+            if (world != tracked) {
+                world.trackChangedCells();
+                tracked = world;
+            }
+            changedCount = world.changedCells(captured, changed);
+            fresh = true;
+        }
+    }
+
+    /**
+     * Called on the EDT once per frame
+     */
+    public void refresh() {
+        synchronized (captured) {
+            if (fresh) {
+                raster.update(captured, changed, changedCount);
+                fresh = false;
+                repaint();
+            }
+        }
+        wanted = true;
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        super.paintComponent(g);
+        g.drawImage(raster.getImage(), 0, 0, null);
+    }
+}
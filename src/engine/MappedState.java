@@ -0,0 +1,125 @@
+package engine;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A file mapped into memory in 1 GiB chunks, addressed by long byte offsets, so the mapping can be
+ * larger than one ByteBuffer allows. Values must be aligned to their size (callers lay out regions
+ * on 8-byte boundaries), so no value straddles two chunks.
+ */
+final class MappedState implements AutoCloseable {
+    private static final int CHUNK_BITS = 30;
+    private static final long CHUNK_MASK = (1L << CHUNK_BITS) - 1;
+    // Ordered access to longs in the mapping, for values another process polls
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    private final FileChannel channel;
+    private final MappedByteBuffer[] chunks;
+    private final long size;
+
+    private MappedState(FileChannel channel, long size, FileChannel.MapMode mode) throws IOException {
+        this.channel = channel;
+        this.size = size;
+        int count = (int) ((size + CHUNK_MASK) >>> CHUNK_BITS);
+        chunks = new MappedByteBuffer[count];
+        for (int i = 0; i < count; i++) {
+            long start = (long) i << CHUNK_BITS;
+            chunks[i] = channel.map(mode, start, Math.min(CHUNK_MASK + 1, size - start));
+            chunks[i].order(ByteOrder.nativeOrder());
+        }
+    }
+
+    /**
+     * Create (or truncate) the file with the given size and map it read-write
+     */
+    static MappedState create(Path file, long size) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        channel.truncate(0);
+        if (size > 0) {
+            // Extend without writing: the new bytes read as zero
+            channel.write(ByteBuffer.allocate(1), size - 1);
+        }
+        return new MappedState(channel, size, FileChannel.MapMode.READ_WRITE);
+    }
+
+    /**
+     * Map an existing file read-only
+     */
+    static MappedState openReadOnly(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        return new MappedState(channel, channel.size(), FileChannel.MapMode.READ_ONLY);
+    }
+
+    long size() {
+        return size;
+    }
+
+    byte getByte(long position) {
+        return chunks[(int) (position >>> CHUNK_BITS)].get((int) (position & CHUNK_MASK));
+    }
+
+    void putByte(long position, byte value) {
+        chunks[(int) (position >>> CHUNK_BITS)].put((int) (position & CHUNK_MASK), value);
+    }
+
+    int getInt(long position) {
+        return chunks[(int) (position >>> CHUNK_BITS)].getInt((int) (position & CHUNK_MASK));
+    }
+
+    void putInt(long position, int value) {
+        chunks[(int) (position >>> CHUNK_BITS)].putInt((int) (position & CHUNK_MASK), value);
+    }
+
+    long getLong(long position) {
+        return chunks[(int) (position >>> CHUNK_BITS)].getLong((int) (position & CHUNK_MASK));
+    }
+
+    void putLong(long position, long value) {
+        chunks[(int) (position >>> CHUNK_BITS)].putLong((int) (position & CHUNK_MASK), value);
+    }
+
+    long getLongAcquire(long position) {
+        return (long) LONGS.getAcquire(chunks[(int) (position >>> CHUNK_BITS)], (int) (position & CHUNK_MASK));
+    }
+
+    void putLongRelease(long position, long value) {
+        LONGS.setRelease(chunks[(int) (position >>> CHUNK_BITS)], (int) (position & CHUNK_MASK), value);
+    }
+
+    double getDouble(long position) {
+        return chunks[(int) (position >>> CHUNK_BITS)].getDouble((int) (position & CHUNK_MASK));
+    }
+
+    void putDouble(long position, double value) {
+        chunks[(int) (position >>> CHUNK_BITS)].putDouble((int) (position & CHUNK_MASK), value);
+    }
+
+    void fillInt(long position, long count, int value) {
+        for (long i = 0; i < count; i++) {
+            putInt(position + 4 * i, value);
+        }
+    }
+
+    /**
+     * Write changes back to the file
+     */
+    void force() {
+        for (MappedByteBuffer chunk : chunks) {
+            chunk.force();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
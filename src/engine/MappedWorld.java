@@ -0,0 +1,436 @@
+package engine;
+
+import entity.Agent;
+import entity.VisionDisc;
+
+import java.io.IOException;
+import java.lang.invoke.VarHandle;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static entity.AppConfig.*;
+
+/**
+ * Single world whose grid and agent state live off-heap in a memory-mapped file instead of
+ * Patch/Location/Agent objects, so heap use does not grow with the world (only the vision stencil
+ * and a few scalars are on the heap). Follows World's rules and random draws exactly.
+ *
+ * It exists for worlds World cannot hold: World needs about 125 bytes of heap per cell at the default
+ * densities, so a 3000x3000 world fails in setup with -Xmx1g, while this one runs it in 2 MB of heap.
+ * It is about 0.6x World's speed and has no fast-forward, so smaller worlds should use World.
+ *
+ * Other processes can map the same file read-only with MappedWorldView while the simulation runs.
+ * The header carries a sequence number that is odd while a tick is being written, so readers can
+ * take a consistent copy of the header statistics; cell and agent regions are read live.
+ *
+ * File layout (native byte order): a 64-byte header, then per-cell int regions (cops, agents not in
+ * jail, active agents, jailed agents, active list head), per-agent regions (cell, release tick,
+ * active list links as ints, risk aversion and hardship as doubles, activation tolerance as an int,
+ * active flag as a byte) and the
+ * per-cop cell, each starting on an 8-byte boundary.
+ */
+public class MappedWorld implements AutoCloseable {
+    static final int MAGIC = 0x52424D57;     //"RBMW"
+    static final int FORMAT = 2;
+
+    // Header offsets
+    static final int WIDTH = 8, HEIGHT = 12, AGENT_CAPACITY = 16, COP_CAPACITY = 20, AGENT_COUNT = 24,
+            COP_COUNT = 28, SEQUENCE = 32, TICKS = 40, ACTIVE = 44, JAILED = 48, FINISHED = 52, SEED = 56;
+    static final int HEADER = 64;
+
+    /**
+     * Byte offsets of the regions for a grid of cells cells with room for agents and cops
+     */
+    record Layout(long copsInCell, long freeInCell, long activeInCell, long jailedInCell, long activeHead,
+                  long agentCell, long releaseTick, long activeNext, long activePrev, long risk, long hardship,
+                  long tolerance, long active, long copCell, long size) {
+        static Layout of(long cells, long agents, long cops) {
+            long[] at = new long[14];
+            long[] lengths = {4 * cells, 4 * cells, 4 * cells, 4 * cells, 4 * cells,
+                    4 * agents, 4 * agents, 4 * agents, 4 * agents, 8 * agents, 8 * agents, 4 * agents, agents,
+                    4 * cops};
+            long position = HEADER;
+            for (int i = 0; i < lengths.length; i++) {
+                at[i] = position;
+                position = (position + lengths[i] + 7) & ~7L;
+            }
+            return new Layout(at[0], at[1], at[2], at[3], at[4], at[5], at[6], at[7], at[8], at[9], at[10],
+                    at[11], at[12], at[13], position);
+        }
+    }
+
+    private final MappedState state;
+    private final Layout layout;
+    private final int height;
+    private final long cells;
+    private final VisionDisc vision;
+    private final int[] scratch;            //row-major disc cells of the current move
+    private final Random random;
+    private final double k, threshold, legitimacy;
+    private int agentCount = 0, copCount = 0;
+    private int activeCount = 0, jailedCount = 0;
+    private int ticks = 0;
+    private long sequence = 0;
+
+    /**
+     * Create the file (replacing any existing one) and set up the world in it, like World.setup
+     */
+    public MappedWorld(Path file, int width, int height, WorldSpec spec) throws IOException {
+        if ((long) width * height > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("At most " + Integer.MAX_VALUE + " cells: " + width + "x" + height);
+        }
+        this.height = height;
+        this.cells = (long) width * height;
+        this.vision = new VisionDisc(width, height, VISION);
+        this.scratch = new int[vision.size()];
+        this.random = new Random(spec.seed());
+        this.k = spec.k();
+        this.threshold = spec.threshold();
+        this.legitimacy = spec.legitimacy();
+        int numAgents = (int) (spec.agentDensity() * cells);
+        int numCops = (int) (spec.copDensity() * cells);
+        int agentCapacity = (int) Math.min(cells, numAgents);
+        int copCapacity = (int) Math.min(cells, numCops);
+        this.layout = Layout.of(cells, agentCapacity, copCapacity);
+        this.state = MappedState.create(file, layout.size());
+
+        state.putInt(0, MAGIC);
+        state.putInt(4, FORMAT);
+        state.putInt(WIDTH, width);
+        state.putInt(HEIGHT, height);
+        state.putInt(AGENT_CAPACITY, agentCapacity);
+        state.putInt(COP_CAPACITY, copCapacity);
+        state.putLong(SEED, spec.seed());
+        beginUpdate();
+        setup(numAgents, numCops);
+        endUpdate();
+    }
+
+    // Cops first, then agents, each on a uniformly random empty patch
+    private void setup(int numAgents, int numCops) {
+        // The active list heads are not needed yet: they hold a Fenwick tree over empty cells
+        // (tree node i at index i - 1) to find the n-th empty cell in grid order
+        for (long i = 1; i <= cells; i++) {
+            putInt(layout.activeHead(), i - 1, (int) (i & -i));
+        }
+        long empty = cells;
+        for (int i = 0; i < numCops && empty > 0; i++) {
+            long cell = takeEmpty(random.nextInt((int) empty--));
+            putInt(layout.copCell(), copCount, (int) cell);
+            addInt(layout.copsInCell(), cell, 1);
+            copCount++;
+        }
+        for (int i = 0; i < numAgents && empty > 0; i++) {
+            long cell = takeEmpty(random.nextInt((int) empty--));
+            putInt(layout.agentCell(), agentCount, (int) cell);
+            double risk = random.nextDouble(), hardship = random.nextDouble();
+            state.putDouble(layout.risk() + 8L * agentCount, risk);
+            state.putDouble(layout.hardship() + 8L * agentCount, hardship);
+            if (k >= 0) {
+                putInt(layout.tolerance(), agentCount,
+                        Agent.activationTolerance(risk, hardship, legitimacy, k, threshold, copCount));
+            }
+            addInt(layout.freeInCell(), cell, 1);
+            agentCount++;
+        }
+        state.fillInt(layout.activeHead(), cells, -1);
+    }
+
+    // Remove and return the rank-th (0-based) remaining cell
+    private long takeEmpty(int rank) {
+        long pos = 0;
+        int remaining = rank + 1;
+        for (long step = Long.highestOneBit(cells); step > 0; step >>= 1) {
+            if (pos + step <= cells && getInt(layout.activeHead(), pos + step - 1) < remaining) {
+                pos += step;
+                remaining -= getInt(layout.activeHead(), pos - 1);
+            }
+        }
+        for (long i = pos + 1; i <= cells; i += i & -i) {
+            addInt(layout.activeHead(), i - 1, -1);
+        }
+        return pos;
+    }
+
+    public void tick() {
+        beginUpdate();
+        // 1. Move agents not in jail, then cops
+        if (MOVEMENT) {
+            for (int a = 0; a < agentCount; a++) {
+                if (getInt(layout.releaseTick(), a) <= ticks) {
+                    moveAgent(a);
+                }
+            }
+        }
+        for (int c = 0; c < copCount; c++) {
+            int from = getInt(layout.copCell(), c);
+            int to = moveTarget(from);
+            addInt(layout.copsInCell(), from, -1);
+            addInt(layout.copsInCell(), to, 1);
+            putInt(layout.copCell(), c, to);
+        }
+
+        // 2. Update status of agents not in jail
+        for (int a = 0; a < agentCount; a++) {
+            if (getInt(layout.releaseTick(), a) <= ticks) {
+                determineBehavior(a);
+            }
+        }
+
+        // 3. Cops enforce law
+        for (int c = 0; c < copCount; c++) {
+            enforce(c);
+        }
+
+        // 4. Advance the clock and release agents whose term ran out
+        ticks++;
+        for (int a = 0; a < agentCount; a++) {
+            if (getInt(layout.releaseTick(), a) == ticks) {
+                int cell = getInt(layout.agentCell(), a);
+                addInt(layout.freeInCell(), cell, 1);
+                addInt(layout.jailedInCell(), cell, -1);
+                jailedCount--;
+            }
+        }
+        endUpdate();
+    }
+
+    private void moveAgent(int a) {
+        int from = getInt(layout.agentCell(), a);
+        int to = moveTarget(from);
+        addInt(layout.freeInCell(), from, -1);
+        addInt(layout.freeInCell(), to, 1);
+        putInt(layout.agentCell(), a, to);
+        if (isAgentActive(a)) {
+            // Same list operations as World, also when the agent stays on its cell
+            removeActive(a, from);
+            addActive(a, to);
+        }
+    }
+
+    // Random cell within vision without cops or agents not in jail (in grid order), or the current cell
+    private int moveTarget(int cell) {
+        int count = vision.rowMajorCells(cell / height, cell % height, scratch);
+        int valid = 0;
+        for (int i = 0; i < count; i++) {
+            if (getInt(layout.copsInCell(), scratch[i]) == 0 && getInt(layout.freeInCell(), scratch[i]) == 0) {
+                valid++;
+            }
+        }
+        if (valid == 0) {
+            return cell;
+        }
+        int pick = random.nextInt(valid);
+        for (int i = 0; ; i++) {
+            if (getInt(layout.copsInCell(), scratch[i]) == 0 && getInt(layout.freeInCell(), scratch[i]) == 0
+                    && pick-- == 0) {
+                return scratch[i];
+            }
+        }
+    }
+
+    private void determineBehavior(int a) {
+        int cell = getInt(layout.agentCell(), a);
+        int x = cell / height, y = cell % height;
+        if (k >= 0) {
+            // Same decision from the integer tolerance, as World does
+            int tol = getInt(layout.tolerance(), a);
+            if (tol == Agent.NEVER_ACTIVE || tol == Agent.ALWAYS_ACTIVE) {
+                setActive(a, cell, tol == Agent.ALWAYS_ACTIVE);
+                return;
+            }
+            int copsCount = 0;
+            for (int i = 0; i < vision.size(); i++) {
+                copsCount += getInt(layout.copsInCell(), vision.cell(x, y, i));
+            }
+            if (copsCount <= tol) {
+                setActive(a, cell, true);
+                return;
+            }
+            int activeAgentsCount = -getInt(layout.activeInCell(), cell);
+            for (int i = 0; i < vision.size(); i++) {
+                activeAgentsCount += getInt(layout.activeInCell(), vision.cell(x, y, i));
+            }
+            setActive(a, cell, copsCount / (activeAgentsCount + 1) <= tol);
+            return;
+        }
+        int copsCount = 0, activeAgentsCount = 0;
+        for (int i = 0; i < vision.size(); i++) {
+            int c = vision.cell(x, y, i);
+            copsCount += getInt(layout.copsInCell(), c);
+            activeAgentsCount += getInt(layout.activeInCell(), c);
+        }
+        activeAgentsCount -= getInt(layout.activeInCell(), cell);
+
+        // Same expression as Agent.beingActive / World.calculateArrestProbability
+        double grievance = state.getDouble(layout.hardship() + 8L * a) * (1 - legitimacy);
+        double arrestProb = 1 - Math.exp(-k * Math.floor((double) copsCount / (activeAgentsCount + 1)));
+        double netRisk = state.getDouble(layout.risk() + 8L * a) * arrestProb;
+        setActive(a, cell, grievance - netRisk > threshold);
+    }
+
+    private void setActive(int a, int cell, boolean now) {
+        if (now != isAgentActive(a)) {
+            state.putByte(layout.active() + a, (byte) (now ? 1 : 0));
+            if (now) {
+                addActive(a, cell);
+                activeCount++;
+            } else {
+                removeActive(a, cell);
+                activeCount--;
+            }
+        }
+    }
+
+    private void enforce(int c) {
+        int copCell = getInt(layout.copCell(), c);
+        int x = copCell / height, y = copCell % height;
+        int total = 0;
+        for (int i = 0; i < vision.size(); i++) {
+            total += getInt(layout.activeInCell(), vision.cell(x, y, i));
+        }
+        if (total == 0) {
+            return;
+        }
+        int pick = random.nextInt(total);
+        int cell = -1;
+        for (int i = 0; cell < 0; i++) {
+            int candidate = vision.cell(x, y, i);
+            int inCell = getInt(layout.activeInCell(), candidate);
+            if (pick < inCell) {
+                cell = candidate;
+            } else {
+                pick -= inCell;
+            }
+        }
+        int a = getInt(layout.activeHead(), cell);
+        for (; pick > 0; pick--) {
+            a = getInt(layout.activeNext(), a);
+        }
+
+        // Cop moves to the suspect's patch, the suspect goes to jail
+        addInt(layout.copsInCell(), copCell, -1);
+        addInt(layout.copsInCell(), cell, 1);
+        putInt(layout.copCell(), c, cell);
+        state.putByte(layout.active() + a, (byte) 0);
+        removeActive(a, cell);
+        activeCount--;
+        int term = Math.max(1, random.nextInt(MAX_JAIL_TERM));
+        putInt(layout.releaseTick(), a, ticks + term);
+        addInt(layout.freeInCell(), cell, -1);
+        addInt(layout.jailedInCell(), cell, 1);
+        jailedCount++;
+    }
+
+    private void addActive(int a, int cell) {
+        int head = getInt(layout.activeHead(), cell);
+        putInt(layout.activeNext(), a, head);
+        putInt(layout.activePrev(), a, -1);
+        if (head >= 0) {
+            putInt(layout.activePrev(), head, a);
+        }
+        putInt(layout.activeHead(), cell, a);
+        addInt(layout.activeInCell(), cell, 1);
+    }
+
+    private void removeActive(int a, int cell) {
+        int prev = getInt(layout.activePrev(), a), next = getInt(layout.activeNext(), a);
+        if (prev >= 0) {
+            putInt(layout.activeNext(), prev, next);
+        } else {
+            putInt(layout.activeHead(), cell, next);
+        }
+        if (next >= 0) {
+            putInt(layout.activePrev(), next, prev);
+        }
+        addInt(layout.activeInCell(), cell, -1);
+    }
+
+    // Sequence is odd while the state is being changed (seqlock writer side)
+    private void beginUpdate() {
+        state.putLongRelease(SEQUENCE, ++sequence);
+        VarHandle.storeStoreFence();
+    }
+
+    private void endUpdate() {
+        state.putInt(AGENT_COUNT, agentCount);
+        state.putInt(COP_COUNT, copCount);
+        state.putInt(TICKS, ticks);
+        state.putInt(ACTIVE, activeCount);
+        state.putInt(JAILED, jailedCount);
+        state.putLongRelease(SEQUENCE, ++sequence);
+    }
+
+    private int getInt(long region, long index) {
+        return state.getInt(region + 4 * index);
+    }
+
+    private void putInt(long region, long index, int value) {
+        state.putInt(region + 4 * index, value);
+    }
+
+    private void addInt(long region, long index, int delta) {
+        long position = region + 4 * index;
+        state.putInt(position, state.getInt(position) + delta);
+    }
+
+    public int getTicks() {
+        return ticks;
+    }
+
+    public int getActiveAgentCount() {
+        return activeCount;
+    }
+
+    public int getJailedAgentCount() {
+        return jailedCount;
+    }
+
+    public int getQuietAgentCount() {
+        return agentCount - activeCount - jailedCount;
+    }
+
+    public int getAgentCount() {
+        return agentCount;
+    }
+
+    public int getCopsCount() {
+        return copCount;
+    }
+
+    // Per-agent state, in World's agent order
+
+    public int getAgentX(int a) {
+        return getInt(layout.agentCell(), a) / height;
+    }
+
+    public int getAgentY(int a) {
+        return getInt(layout.agentCell(), a) % height;
+    }
+
+    public boolean isAgentActive(int a) {
+        return state.getByte(layout.active() + a) != 0;
+    }
+
+    public int getJailTerm(int a) {
+        return Math.max(0, getInt(layout.releaseTick(), a) - ticks);
+    }
+
+    public int getCopX(int c) {
+        return getInt(layout.copCell(), c) / height;
+    }
+
+    public int getCopY(int c) {
+        return getInt(layout.copCell(), c) % height;
+    }
+
+    /**
+     * Mark the run as finished for readers, write everything back to the file and unmap it
+     */
+    @Override
+    public void close() throws IOException {
+        state.putInt(FINISHED, 1);
+        state.force();
+        state.close();
+    }
+}
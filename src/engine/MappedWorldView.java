@@ -0,0 +1,104 @@
+package engine;
+
+import entity.World;
+
+import java.io.IOException;
+import java.lang.invoke.VarHandle;
+import java.nio.file.Path;
+
+/**
+ * Read-only view of a MappedWorld file, for a process other than the one running the simulation.
+ * Nothing is copied: every call reads the mapping directly. The header statistics are read
+ * consistently (retrying while a tick is being written); cells are read live and may mix two ticks.
+ */
+public class MappedWorldView implements AutoCloseable {
+    public record Stats(int ticks, int active, int jailed, int quiet, int cops, boolean finished) {
+    }
+
+    private final MappedState state;
+    private final MappedWorld.Layout layout;
+    private final int width, height;
+
+    public MappedWorldView(Path file) throws IOException {
+        this.state = MappedState.openReadOnly(file);
+        if (state.size() < MappedWorld.HEADER || state.getInt(0) != MappedWorld.MAGIC
+                || state.getInt(4) != MappedWorld.FORMAT) {
+            state.close();
+            throw new IOException("Not a mapped world file: " + file);
+        }
+        this.width = state.getInt(MappedWorld.WIDTH);
+        this.height = state.getInt(MappedWorld.HEIGHT);
+        this.layout = MappedWorld.Layout.of((long) width * height, state.getInt(MappedWorld.AGENT_CAPACITY),
+                state.getInt(MappedWorld.COP_CAPACITY));
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public long getSeed() {
+        return state.getLong(MappedWorld.SEED);
+    }
+
+    /**
+     * Statistics of the last completed tick (seqlock reader side)
+     */
+    public Stats stats() {
+        while (true) {
+            long before = state.getLongAcquire(MappedWorld.SEQUENCE);
+            if ((before & 1) == 0) {
+                int agents = state.getInt(MappedWorld.AGENT_COUNT);
+                int active = state.getInt(MappedWorld.ACTIVE);
+                int jailed = state.getInt(MappedWorld.JAILED);
+                Stats stats = new Stats(state.getInt(MappedWorld.TICKS), active, jailed, agents - active - jailed,
+                        state.getInt(MappedWorld.COP_COUNT), state.getInt(MappedWorld.FINISHED) != 0);
+                VarHandle.loadLoadFence();
+                if (state.getLongAcquire(MappedWorld.SEQUENCE) == before) {
+                    return stats;
+                }
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * State of a cell as one of World's CELL_ values, with the same priority as World.snapshotCells
+     */
+    public byte cellState(int x, int y) {
+        long cell = (long) x * height + y;
+        if (state.getInt(layout.copsInCell() + 4 * cell) > 0) {
+            return World.CELL_COP;
+        }
+        int active = state.getInt(layout.activeInCell() + 4 * cell);
+        if (active > 0) {
+            return World.CELL_ACTIVE;
+        }
+        if (state.getInt(layout.freeInCell() + 4 * cell) > active) {
+            return World.CELL_QUIET;
+        }
+        if (state.getInt(layout.jailedInCell() + 4 * cell) > 0) {
+            return World.CELL_JAILED;
+        }
+        return World.CELL_EMPTY;
+    }
+
+    /**
+     * Write the states of the w x h window at (x0, y0) into cells (index dx * h + dy)
+     */
+    public void snapshotCells(int x0, int y0, int w, int h, byte[] cells) {
+        for (int dx = 0; dx < w; dx++) {
+            for (int dy = 0; dy < h; dy++) {
+                cells[dx * h + dy] = cellState((x0 + dx) % width, (y0 + dy) % height);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        state.close();
+    }
+}
@@ -0,0 +1,413 @@
+package engine;
+
+import entity.Agent;
+import entity.VisionDisc;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static entity.AppConfig.*;
+
+/**
+ * Approximate mean-field engine for screening parameter sweeps. It is not exact: it produces
+ * expected counts at a tiny fraction of World's cost, to find the interesting parameter regions
+ * before running them with an exact engine (see MeanFieldCalibration for how close it gets).
+ *
+ * The torus is split into blocks of blockSize x blockSize cells. Each block holds, as expected
+ * (fractional) counts:
+ * - free agents per activation tolerance class (Agent.activationTolerance, which captures an
+ *   agent's risk aversion and hardship with respect to the rules exactly), and the active share
+ * - cops
+ * - jailed agents per class and remaining term
+ *
+ * A tick follows World's phases on these expectations:
+ * 1. move: free agents and cops spread over the vision disc of their cell, as a random move does
+ * 2. behavior: the cops within vision are Poisson with the expected count, and an agent of tolerance
+ *    t is active when floor(cops / (active + 1)) <= t. The active agents within vision are Poisson
+ *    with the rate seen around cells with as many cops on the previous tick, since neighbors share
+ *    most of their vision: rebels that shield each other away from the cops are not averaged out.
+ * 3. enforce: a cop with an active agent within vision (again given the cops around it) arrests one,
+ *    picked in proportion to the active agents around it, and moves to its block; the jail term is
+ *    max(1, U{0..MAX_JAIL_TERM-1})
+ * 4. jail: terms count down and agents are released quiet
+ *
+ * Only the placement and the agent attributes are drawn from the seed; the dynamics are
+ * deterministic. Counts are reported rounded to integers. The expectations follow the full engine
+ * closely while cops are scarce; with more cops the bursts of rebellion in cop-free pockets, which
+ * the cops' clustering keeps alive, are under-predicted.
+ */
+public class MeanField {
+    private final int blocks;
+    private final double[] cellsInBlock;
+    // Expected number of vision cells in block j around a random cell of block i: sparse rows
+    private final int[][] neighbor;
+    private final double[][] visionCells;
+    private final double discSize;
+
+    // Tolerance classes: 0 = never active, 1..maxTolerance+1 = tolerance 0..maxTolerance, last = always
+    private final int classes;
+    private final int copTotal, agentTotal;
+    private final int terms;                    //jail terms are 1..terms-1
+    private final double[] termProbability;     //probability of each jail term
+
+    // Per block (block * classes + class for agents)
+    private double[] free, active, cops;
+    private double[] jailed;                    //(block * classes + class) * terms + release tick % terms
+    private double[] nextFree, nextActive, nextCops;
+    private final double[] copsInVision, freeInVision, activeInVision, copArrests, arrests, arrestScale, copMoves;
+    // Active share of the free agents around a cell of block i that sees c cops (c up to copRange)
+    private final int copRange;
+    private final double[] activeGivenCops, copPmf, activeCdf, classProbability, certainFrom, share;
+
+    private int ticks = 0;
+
+    public MeanField(int width, int height, int blockSize, WorldSpec spec) {
+        if (spec.k() < 0) {
+            throw new IllegalArgumentException("The mean-field engine needs k >= 0: " + spec.k());
+        }
+        VisionDisc vision = new VisionDisc(width, height, VISION);
+        int blocksX = (width + blockSize - 1) / blockSize, blocksY = (height + blockSize - 1) / blockSize;
+        this.blocks = blocksX * blocksY;
+        this.discSize = vision.size();
+        this.cellsInBlock = new double[blocks];
+        int[] blockOf = new int[width * height];
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                blockOf[x * height + y] = (x / blockSize) * blocksY + y / blockSize;
+                cellsInBlock[blockOf[x * height + y]]++;
+            }
+        }
+
+        // Vision overlap between blocks, averaged over the cells of the source block
+        this.neighbor = new int[blocks][];
+        this.visionCells = new double[blocks][];
+        double[] row = new double[blocks];
+        int[] touched = new int[blocks];
+        for (int i = 0; i < blocks; i++) {
+            int bx = i / blocksY, by = i % blocksY;
+            int count = 0;
+            for (int x = bx * blockSize; x < Math.min(width, (bx + 1) * blockSize); x++) {
+                for (int y = by * blockSize; y < Math.min(height, (by + 1) * blockSize); y++) {
+                    for (int d = 0; d < vision.size(); d++) {
+                        int j = blockOf[vision.cell(x, y, d)];
+                        if (row[j] == 0) {
+                            touched[count++] = j;
+                        }
+                        row[j]++;
+                    }
+                }
+            }
+            Arrays.sort(touched, 0, count);
+            neighbor[i] = Arrays.copyOf(touched, count);
+            visionCells[i] = new double[count];
+            for (int n = 0; n < count; n++) {
+                visionCells[i][n] = row[touched[n]] / cellsInBlock[i];
+                row[touched[n]] = 0;
+            }
+        }
+
+        // Same numbers of turtles and the same attribute distributions as World.setup
+        Random random = new Random(spec.seed());
+        int cells = width * height;
+        this.copTotal = Math.min(cells, (int) (spec.copDensity() * cells));
+        this.agentTotal = Math.min(cells - copTotal, (int) (spec.agentDensity() * cells));
+        int[] tolerance = new int[agentTotal];
+        int[] agentBlock = new int[agentTotal];
+        int maxTolerance = -1;
+        for (int a = 0; a < agentTotal; a++) {
+            agentBlock[a] = blockOf[random.nextInt(cells)];
+            double risk = random.nextDouble(), hardship = random.nextDouble();
+            tolerance[a] = Agent.activationTolerance(risk, hardship, spec.legitimacy(), spec.k(), spec.threshold(), copTotal);
+            if (tolerance[a] != Agent.NEVER_ACTIVE && tolerance[a] != Agent.ALWAYS_ACTIVE) {
+                maxTolerance = Math.max(maxTolerance, tolerance[a]);
+            }
+        }
+        this.classes = maxTolerance + 3;
+        free = new double[blocks * classes];
+        active = new double[blocks * classes];
+        cops = new double[blocks];
+        terms = Math.max(2, MAX_JAIL_TERM);
+        jailed = new double[blocks * classes * terms];
+        nextFree = new double[free.length];
+        nextActive = new double[active.length];
+        nextCops = new double[blocks];
+        copsInVision = new double[blocks];
+        activeInVision = new double[blocks];
+        copArrests = new double[blocks];
+        arrests = new double[blocks];
+        arrestScale = new double[blocks];
+        copMoves = new double[blocks];
+        freeInVision = new double[blocks];
+        // Cops within vision beyond a generous Poisson tail of the mean density count as copRange
+        double meanCops = copTotal * discSize / cells;
+        copRange = Math.min(copTotal, (int) Math.ceil(4 * meanCops + 8 * Math.sqrt(meanCops) + 16));
+        activeGivenCops = new double[blocks * (copRange + 1)];
+        copPmf = new double[copRange + 1];
+        activeCdf = new double[copRange + 1];
+        classProbability = new double[classes];
+        certainFrom = new double[classes + 1];
+        share = new double[classes + 1];
+        for (int a = 0; a < agentTotal; a++) {
+            free[agentBlock[a] * classes + classOf(tolerance[a])]++;
+        }
+        for (int c = 0; c < copTotal; c++) {
+            cops[blockOf[random.nextInt(cells)]]++;
+        }
+
+        // World draws max(1, nextInt(MAX_JAIL_TERM))
+        termProbability = new double[terms];
+        for (int draw = 0; draw < MAX_JAIL_TERM; draw++) {
+            termProbability[Math.max(1, draw)] += 1.0 / MAX_JAIL_TERM;
+        }
+    }
+
+    private int classOf(int tolerance) {
+        if (tolerance == Agent.NEVER_ACTIVE) {
+            return 0;
+        }
+        return tolerance == Agent.ALWAYS_ACTIVE ? classes - 1 : tolerance + 1;
+    }
+
+    public void tick() {
+        move();
+        determineBehavior();
+        enforce();
+        releaseDue();
+    }
+
+    // 1. Free agents (with their active flag) and cops spread over the vision disc
+    private void move() {
+        if (MOVEMENT) {
+            Arrays.fill(nextFree, 0);
+            Arrays.fill(nextActive, 0);
+            for (int i = 0; i < blocks; i++) {
+                for (int n = 0; n < neighbor[i].length; n++) {
+                    int j = neighbor[i][n];
+                    double share = visionCells[i][n] / discSize;
+                    for (int c = 0; c < classes; c++) {
+                        nextFree[j * classes + c] += free[i * classes + c] * share;
+                        nextActive[j * classes + c] += active[i * classes + c] * share;
+                    }
+                }
+            }
+            double[] swap = free;
+            free = nextFree;
+            nextFree = swap;
+            swap = active;
+            active = nextActive;
+            nextActive = swap;
+        }
+        Arrays.fill(nextCops, 0);
+        for (int i = 0; i < blocks; i++) {
+            for (int n = 0; n < neighbor[i].length; n++) {
+                nextCops[neighbor[i][n]] += cops[i] * visionCells[i][n] / discSize;
+            }
+        }
+        double[] swap = cops;
+        cops = nextCops;
+        nextCops = swap;
+    }
+
+    // 2. Active share of each tolerance class, over the Poisson cop count and the active rate given it
+    private void determineBehavior() {
+        inVision(freeInVision, blockTotals(free));
+        inVision(copsInVision, cops);
+        for (int i = 0; i < blocks; i++) {
+            int last = poissonPmf(copsInVision[i], copPmf);
+            double[] probability = classProbability;
+            Arrays.fill(probability, 0);
+            Arrays.fill(certainFrom, 0);
+            // share[k] = share of the block's free agents in classes k and above
+            double freeHere = 0;
+            for (int k = 0; k < classes; k++) {
+                freeHere += free[i * classes + k];
+            }
+            share[classes] = 0;
+            for (int k = classes - 1; k >= 0; k--) {
+                share[k] = share[k + 1] + (freeHere > 0 ? free[i * classes + k] / freeHere : 0);
+            }
+            int row = i * (copRange + 1);
+            for (int c = 0; c <= last; c++) {
+                double lambda = freeInVision[i] * activeGivenCops[row + c];
+                // floor(C / (A + 1)) <= t  <=>  A >= floor(C / (t + 1)), certain for the classes t >= C
+                int uncertain = Math.min(c, classes - 2);
+                poissonCdf(lambda, activeCdf, c);
+                // The active share of the block's free agents around such a cell, for the next tick
+                double next = share[uncertain + 1];
+                for (int k = 1; k <= uncertain; k++) {
+                    double q = 1 - activeCdf[c / k - 1];
+                    probability[k] += copPmf[c] * q;
+                    next += q * (share[k] - share[k + 1]);
+                }
+                certainFrom[uncertain + 1] += copPmf[c];
+                activeGivenCops[row + c] = next;
+            }
+            double certain = 0;
+            for (int k = 1; k < classes; k++) {
+                certain += certainFrom[k];
+                probability[k] += certain;
+            }
+            Arrays.fill(activeGivenCops, row + last + 1, row + copRange + 1, activeGivenCops[row + last]);
+            for (int k = 0; k < classes; k++) {
+                active[i * classes + k] = free[i * classes + k] * Math.min(1, probability[k]);
+            }
+        }
+    }
+
+    // 3. Each cop with an active agent within vision arrests one and moves to its block
+    private void enforce() {
+        double[] activeInBlock = blockTotals(active);
+        inVision(activeInVision, activeInBlock);
+        // A cop sees itself and the other cops around it, and the active agents seen around that many cops
+        for (int i = 0; i < blocks; i++) {
+            int last = poissonPmf(copsInVision[i], copPmf);
+            int row = i * (copRange + 1);
+            double probability = 0;
+            for (int c = 0; c <= last; c++) {
+                int seen = Math.min(copRange, c + 1);
+                probability += copPmf[c] * (1 - Math.exp(-freeInVision[i] * activeGivenCops[row + seen]));
+            }
+            copArrests[i] = probability;
+        }
+        // Arrests aimed at each block; at most its active agents are arrested, the cops' moves scale alike
+        Arrays.fill(arrests, 0);
+        for (int i = 0; i < blocks; i++) {
+            for (int n = 0; n < neighbor[i].length; n++) {
+                arrests[neighbor[i][n]] += aimed(i, n, cops[i], activeInBlock);
+            }
+        }
+        for (int j = 0; j < blocks; j++) {
+            arrestScale[j] = arrests[j] > activeInBlock[j] ? activeInBlock[j] / arrests[j] : 1;
+        }
+        Arrays.fill(copMoves, 0);
+        for (int i = 0; i < blocks; i++) {
+            double copsHere = cops[i];
+            for (int n = 0; n < neighbor[i].length; n++) {
+                int j = neighbor[i][n];
+                double moved = aimed(i, n, copsHere, activeInBlock) * arrestScale[j];
+                cops[i] -= moved;
+                copMoves[j] += moved;
+            }
+        }
+        for (int j = 0; j < blocks; j++) {
+            cops[j] += copMoves[j];
+            double fraction = activeInBlock[j] > 0 ? Math.min(1, copMoves[j] / activeInBlock[j]) : 0;
+            for (int c = 0; c <= copRange; c++) {
+                activeGivenCops[j * (copRange + 1) + c] *= 1 - fraction;
+            }
+            for (int c = 0; c < classes; c++) {
+                int slot = j * classes + c;
+                double arrested = active[slot] * fraction;
+                active[slot] = Math.max(0, active[slot] - arrested);
+                free[slot] = Math.max(0, free[slot] - arrested);
+                if (arrested > 0) {
+                    for (int term = 1; term < terms; term++) {
+                        jailed[slot * terms + (ticks + term) % terms] += arrested * termProbability[term];
+                    }
+                }
+            }
+        }
+    }
+
+    // Expected arrests by the copsHere cops of block i in its n-th neighbor block
+    private double aimed(int i, int n, double copsHere, double[] activeInBlock) {
+        double lambda = activeInVision[i];
+        if (lambda <= 0) {
+            return 0;
+        }
+        int j = neighbor[i][n];
+        return copsHere * copArrests[i] * visionCells[i][n] * activeInBlock[j] / cellsInBlock[j] / lambda;
+    }
+
+    // 4. Agents due this tick are released quiet (a term of 1 ends on the tick of the arrest)
+    private void releaseDue() {
+        int due = (ticks + 1) % terms;
+        for (int slot = 0; slot < free.length; slot++) {
+            free[slot] += jailed[slot * terms + due];
+            jailed[slot * terms + due] = 0;
+        }
+        ticks++;
+    }
+
+    // Expected count within vision of a cell of each block, from per-block totals
+    private void inVision(double[] out, double[] perBlock) {
+        for (int i = 0; i < blocks; i++) {
+            double sum = 0;
+            for (int n = 0; n < neighbor[i].length; n++) {
+                int j = neighbor[i][n];
+                sum += visionCells[i][n] * perBlock[j] / cellsInBlock[j];
+            }
+            out[i] = sum;
+        }
+    }
+
+    private double[] blockTotals(double[] perClass) {
+        double[] totals = new double[blocks];
+        for (int i = 0; i < blocks; i++) {
+            for (int c = 0; c < classes; c++) {
+                totals[i] += perClass[i * classes + c];
+            }
+        }
+        return totals;
+    }
+
+    // pmf[n] = P(X = n) for X ~ Poisson(lambda) up to a far tail, whose mass goes to the last entry;
+    // returns the index of the last entry
+    private static int poissonPmf(double lambda, double[] pmf) {
+        int last = Math.min(pmf.length - 1, (int) Math.ceil(lambda + 6 * Math.sqrt(lambda) + 10));
+        double p = Math.exp(-lambda), sum = 0;
+        for (int n = 0; n < last; n++) {
+            pmf[n] = p;
+            sum += p;
+            p *= lambda / (n + 1);
+        }
+        pmf[last] = Math.max(0, 1 - sum);
+        return last;
+    }
+
+    // cdf[n] = P(X <= n) for X ~ Poisson(lambda), n < count
+    private static void poissonCdf(double lambda, double[] cdf, int count) {
+        double p = Math.exp(-lambda), sum = 0;
+        for (int n = 0; n < count; n++) {
+            sum += p;
+            cdf[n] = Math.min(1, sum);
+            p *= lambda / (n + 1);
+        }
+    }
+
+    public int getTicks() {
+        return ticks;
+    }
+
+    public double getExpectedActive() {
+        return sum(active);
+    }
+
+    public double getExpectedJailed() {
+        return sum(jailed);
+    }
+
+    public int getActiveAgentCount() {
+        return (int) Math.round(getExpectedActive());
+    }
+
+    public int getJailedAgentCount() {
+        return (int) Math.round(getExpectedJailed());
+    }
+
+    public int getQuietAgentCount() {
+        return agentTotal - getActiveAgentCount() - getJailedAgentCount();
+    }
+
+    public int getCopsCount() {
+        return copTotal;
+    }
+
+    private static double sum(double[] values) {
+        double sum = 0;
+        for (double v : values) {
+            sum += v;
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,8 @@
+package engine;
+
+/**
+ * Seed and model parameters of one world, as passed to World.setup
+ */
+public record WorldSpec(long seed, double agentDensity, double copDensity,
+                        double k, double threshold, double legitimacy) {
+}
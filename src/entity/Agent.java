@@ -3,13 +3,22 @@ package entity;
 import static entity.AppConfig.*;
 
 public class Agent extends Turtle {
+    // activationTolerance for an agent that is never / always active
+    public static final int NEVER_ACTIVE = -1;
+    public static final int ALWAYS_ACTIVE = Integer.MAX_VALUE;
+
     double risk_aversion = 0.5; //R, fixed for the agent's lifetime, ranging from 0-1 (inclusive)
     double perceived_hardship = 0.5;   //H, also ranging from 0-1 (inclusive)
     private boolean active = false;
-    private int jail_term = 0;
+    // Jail terms are tracked centrally by the World's timing wheel: an agent only remembers
+    // the tick on which it is released, its remaining term is derived from the world clock
+    int releaseTick = 0;
+    int index;      //position in World.agents
+    World world;
 
-    //Each agent has different parameters when created (color is fixed)
-    public Agent(Location location, double risk_aversion, double perceived_hardship) {
+    //Each agent has different parameters when created (color is fixed); only World creates agents,
+    //since the jail term and active flag are kept through the world it belongs to
+    Agent(Location location, double risk_aversion, double perceived_hardship) {
         this.color = AGENT_COLOR;
         this.location = location;
         this.risk_aversion = risk_aversion;
@@ -17,7 +26,7 @@ public class Agent extends Turtle {
     }
 
     public boolean isJailed() {
-        return jail_term > 0;
+        return getJail_term() > 0;
     }
 
     public boolean isActive() {
@@ -33,26 +42,62 @@ public class Agent extends Turtle {
         double grievance = getGrievance(government_legitimacy);
         double arrestProb = w.calculateArrestProbability(location);
         double netRisk = risk_aversion * arrestProb;
-        active = (grievance - netRisk > threshold);
+        setActive(grievance - netRisk > threshold);
     }
 
     private double getGrievance(double government_legitimacy) {
         return perceived_hardship * (1 - government_legitimacy);
     }
 
-    public void moveTo(Location randomLoc){
-        this.location = randomLoc;
+    /**
+     * The arrest probability only depends on the integer ratio floor(cops / (active + 1)), and for
+     * k >= 0 it does not decrease as the ratio grows, so beingActive is true exactly for the ratios
+     * up to a tolerance. Returns that tolerance, NEVER_ACTIVE if the agent is quiet even at ratio 0,
+     * or ALWAYS_ACTIVE if it is active at every ratio up to maxRatio (the number of cops). The first
+     * quiet ratio is estimated in closed form and settled by trying its neighbors with the same
+     * expression as beingActive, so comparing with the tolerance gives the same decisions.
+     */
+    public static int activationTolerance(double risk_aversion, double perceived_hardship, double government_legitimacy,
+                                          double k, double threshold, int maxRatio) {
+        double grievance = perceived_hardship * (1 - government_legitimacy);
+        if (!isActiveAt(0, grievance, risk_aversion, k, threshold)) {
+            return NEVER_ACTIVE;
+        }
+        // With k == 0 the probability is 0 at every ratio, so this also settles that case
+        if (isActiveAt(maxRatio, grievance, risk_aversion, k, threshold)) {
+            return ALWAYS_ACTIVE;
+        }
+        // Quiet once 1 - exp(-k * ratio) >= (grievance - threshold) / risk_aversion
+        double estimate = -Math.log1p(-(grievance - threshold) / risk_aversion) / k;
+        int quiet = estimate < maxRatio ? Math.max(1, (int) Math.ceil(estimate)) : maxRatio;
+        while (quiet > 1 && !isActiveAt(quiet - 1, grievance, risk_aversion, k, threshold)) {
+            quiet--;
+        }
+        while (isActiveAt(quiet, grievance, risk_aversion, k, threshold)) {
+            quiet++;
+        }
+        return quiet - 1;
     }
 
-    public int getJail_term() {
-        return jail_term;
+    // beingActive's decision at a given ratio
+    private static boolean isActiveAt(int ratio, double grievance, double risk_aversion, double k, double threshold) {
+        double arrestProb = 1 - Math.exp(-k * ratio);
+        return grievance - risk_aversion * arrestProb > threshold;
+    }
+
+    public void moveTo(Location randomLoc){
+        Location from = this.location;
+        this.location = randomLoc;
+        if (active) {
+            world.activeAgentMoved(this, from);
+        }
     }
 
     /**
-     * Decrease jail term by 1
+     * Remaining jail term, 0 means not in jail
      */
-    public void decre_Jail_term(int jail_term) {
-        this.jail_term--;
+    public int getJail_term() {
+        return Math.max(0, releaseTick - world.getTicks());
     }
 
     /**
@@ -61,10 +106,13 @@ public class Agent extends Turtle {
      */
     public void setJailTerm(int jail_term) {
         // Ensure jail term is at least 1, as 0 means not in jail
-        this.jail_term = Math.max(1, jail_term);
+        world.jail(this, Math.max(1, jail_term));
     }
 
     public void setActive(boolean b) {
-        this.active = b;
+        if (active != b) {
+            this.active = b;
+            world.activeChanged(this);
+        }
     }
 }
@@ -26,6 +26,18 @@ public final class AppConfig {
     // Additional parameters in NetLogo
     public static final boolean MOVEMENT = true; // Whether to allow agent movement
 
+    // All turtles choose move targets at once from the previous occupancy (different semantics, see World)
+    public static final boolean SYNCHRONOUS_MOVEMENT = false;
+
+    // Skip moves and enforcement once no agent can become active (exact counts, positions frozen; see World)
+    public static final boolean FAST_FORWARD = false;
+
+    // Every this many ticks, store agents and cops in space-filling-curve order (0 = never; see World)
+    public static final int SPATIAL_REORDER_INTERVAL = 0;
+
+    // Bump whenever a change alters the results of a seeded run, so cached runs are not reused
+    public static final int ENGINE_VERSION = 1;
+
     public static final String AGENT_COLOR = "GREEN";
     public static final String COPS_COLOR = "RED";
     private AppConfig() {
@@ -1,7 +1,4 @@
 package entity;
-import java.util.Optional;
-import java.util.Random;
-
 import static entity.AppConfig.*;
 
 public class Cop extends Turtle {
@@ -14,12 +11,10 @@ public class Cop extends Turtle {
         this.location = newLocation;
     }
 
+    /**
+     * Rule C: arrest a random active agent within vision and move to its patch
+     */
     public void arrest(World world) {
-        Optional<Agent> suspect = world.getRandomActiveAgentInNeighborhood(location);
-        suspect.ifPresent(agent -> {
-            this.moveTo(agent.getLocation());
-            agent.setActive(false);
-            agent.setJailTerm(new Random().nextInt(MAX_JAIL_TERM) + 1);
-        });
+        world.enforce(this);
     }
 }
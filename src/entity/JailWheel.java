@@ -0,0 +1,61 @@
+package entity;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Timing wheel holding jailed agents, keyed by the tick on which they are released.
+ * Slot (releaseTick % size) holds every agent due on that tick, so releasing is
+ * O(released) per tick instead of a pass over the whole population.
+ * The wheel grows when a jail term does not fit into the current number of slots.
+ */
+class JailWheel {
+    private List<Agent>[] slots;
+
+    JailWheel(int size) {
+        slots = newSlots(Math.max(2, size));
+    }
+
+    /**
+     * Schedule an agent for release at releaseTick (now < releaseTick)
+     */
+    void schedule(Agent agent, int releaseTick, int now) {
+        if (releaseTick - now >= slots.length) {
+            grow(releaseTick - now + 1);
+        }
+        slots[releaseTick % slots.length].add(agent);
+    }
+
+    /**
+     * Remove an agent that was scheduled for releaseTick (used when a jail term is overwritten)
+     */
+    void cancel(Agent agent, int releaseTick) {
+        slots[releaseTick % slots.length].remove(agent);
+    }
+
+    /**
+     * Agents released on the given tick. The caller must drain the list with clear()
+     */
+    List<Agent> due(int tick) {
+        return slots[tick % slots.length];
+    }
+
+    private void grow(int minSize) {
+        List<Agent>[] old = slots;
+        slots = newSlots(Math.max(minSize, old.length * 2));
+        for (List<Agent> slot : old) {
+            for (Agent agent : slot) {
+                slots[agent.releaseTick % slots.length].add(agent);
+            }
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static List<Agent>[] newSlots(int size) {
+        List<Agent>[] slots = new List[size];
+        for (int i = 0; i < size; i++) {
+            slots[i] = new ArrayList<>();
+        }
+        return slots;
+    }
+}
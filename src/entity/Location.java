@@ -2,6 +2,8 @@ package entity;
 
 /**
  * Records the x and y coordinates for each turtle and plot
+ * World shares one instance per cell between its patch and every turtle standing on it,
+ * so a turtle's location must not be changed with setLocation (move the turtle instead)
  */
 public class Location {
     private int x, y;
@@ -0,0 +1,131 @@
+package entity;
+
+import java.util.Arrays;
+
+/**
+ * Cells within a radius on a width x height torus, using the same distance as NetLogo's in-radius
+ * (Euclidean, each axis taking the shorter way around). Cell index is x * height + y.
+ *
+ * Two traversal orders are offered and engines must use the same ones as World:
+ * - stencil order: offsets (dx, dy) with dx from 0 to width-1, then dy from 0 to height-1,
+ *   used for neighborhood counts and picking a suspect
+ * - row-major order: cells of one disc by ascending cell index, used for choosing a move target
+ */
+public final class VisionDisc {
+    private final int width, height, radius;
+    private final int[] dx, dy;         //stencil offsets, each distinct cell exactly once
+    private final int[] halfWidth;      //largest |dy| within radius for each |dx| in 0..radius
+
+    public VisionDisc(int width, int height, int radius) {
+        this.width = width;
+        this.height = height;
+        this.radius = radius;
+        this.halfWidth = new int[radius + 1];
+        for (int d = 0; d <= radius; d++) {
+            int h = 0;
+            while ((h + 1) * (h + 1) + d * d <= radius * radius) {
+                h++;
+            }
+            halfWidth[d] = h;
+        }
+        int count = 0;
+        // At most (2r+1)^2 offsets, so huge grids need no width * height scratch
+        int capacity = (int) Math.min((long) width * height, (long) (2 * radius + 1) * (2 * radius + 1));
+        int[] offX = new int[capacity], offY = new int[capacity];
+        for (int x = 0; x < width; x++) {
+            int ax = Math.min(x, width - x);
+            if (ax > radius) {
+                continue;
+            }
+            for (int y = 0; y < height; y++) {
+                int ay = Math.min(y, height - y);
+                if (ax * ax + ay * ay <= radius * radius) {
+                    offX[count] = x;
+                    offY[count] = y;
+                    count++;
+                }
+            }
+        }
+        this.dx = Arrays.copyOf(offX, count);
+        this.dy = Arrays.copyOf(offY, count);
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Number of cells in the disc
+     */
+    public int size() {
+        return dx.length;
+    }
+
+    /**
+     * Cell of the i-th stencil offset around (x, y)
+     */
+    public int cell(int x, int y, int i) {
+        return ((x + dx[i]) % width) * height + (y + dy[i]) % height;
+    }
+
+    public boolean contains(int x1, int y1, int x2, int y2) {
+        int ax = Math.abs(x1 - x2), ay = Math.abs(y1 - y2);
+        ax = Math.min(ax, width - ax);
+        ay = Math.min(ay, height - ay);
+        return ax * ax + ay * ay <= radius * radius;
+    }
+
+    /**
+     * Write the cells of the disc around (cx, cy) into out by ascending cell index
+     * (the order a full x-then-y grid scan would visit them) and return how many.
+     * out must hold at least size() cells.
+     */
+    public int rowMajorCells(int cx, int cy, int[] out) {
+        int lo = cx - radius, hi = cx + radius;
+        if (hi - lo + 1 >= width) {
+            return columns(0, width - 1, cx, cy, out, 0);
+        }
+        // The wrapped part of a range crossing an edge comes first, so x stays ascending
+        if (lo < 0) {
+            int n = columns(0, hi, cx, cy, out, 0);
+            return columns(lo + width, width - 1, cx, cy, out, n);
+        }
+        if (hi >= width) {
+            int n = columns(0, hi - width, cx, cy, out, 0);
+            return columns(lo, width - 1, cx, cy, out, n);
+        }
+        return columns(lo, hi, cx, cy, out, 0);
+    }
+
+    private int columns(int from, int to, int cx, int cy, int[] out, int n) {
+        for (int x = from; x <= to; x++) {
+            int d = Math.abs(x - cx);
+            int half = halfWidth[Math.min(d, width - d)];
+            int lo = cy - half, hi = cy + half;
+            int base = x * height;
+            if (hi - lo + 1 >= height) {
+                lo = 0;
+                hi = height - 1;
+            } else if (lo < 0) {
+                for (int y = 0; y <= hi; y++) {
+                    out[n++] = base + y;
+                }
+                lo += height;
+                hi = height - 1;
+            } else if (hi >= height) {
+                for (int y = 0; y <= hi - height; y++) {
+                    out[n++] = base + y;
+                }
+                hi = height - 1;
+            }
+            for (int y = lo; y <= hi; y++) {
+                out[n++] = base + y;
+            }
+        }
+        return n;
+    }
+}
@@ -1,29 +1,108 @@
 package entity;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 import java.util.Random;
+import java.util.stream.IntStream;
+import metrics.ClusterAnalyzer;
+import metrics.PhaseEvent;
+import metrics.TickMetrics;
 import static entity.AppConfig.*;
 
 //Initialize grid and turtles
 public class World {
     private Patch[][] grid;
-    private List<Agent> agents;
+    private List<Agent> agents;     //storage and iteration order, agent.index is the position here
     private List<Cop> cops;
+    private List<Agent> createdAgents;  //creation order, for getAgents
+    private List<Cop> createdCops;
     private Random random;
+    private long seed;
     private double k;
     private double threshold;
     private double government_legitimacy;
+    private BitSet free;            //indices of agents not in jail, iterated in agent order
+    private JailWheel jailWheel;    //jailed agents keyed by release tick
+    private int ticks = 0;
+
+    // Cells within VISION of a cell, each distinct cell exactly once
+    private VisionDisc vision;
+
+    // Occupancy per cell, kept up to date on every move, arrest and release so that choosing a move
+    // target or counting cops is O(vision area) and the tick allocates nothing in steady state
+    private int[] copsInCell;       //cops on each cell
+    private int[] freeInCell;       //agents not in jail on each cell
+    private int[] moveCells;        //scratch: cells of one vision disc in row-major order
+
+    // Synchronous movement: all turtles choose from the occupancy at the start of the move phase
+    private boolean synchronousMovement = SYNCHRONOUS_MOVEMENT;
+    private int[] occupied;         //cops and agents not in jail on each cell at the start of the phase
+    private int[] claimant;         //turtle that won each cell this tick, -1 if none
+    private int[] moveTarget;       //cell chosen by each turtle (agents first, then cops), -1 to stay
+
+    // Fast-forward: while no agent is active and no free agent can become active, ticks only count
+    // down jail terms until an agent that can become active is released
+    private boolean fastForward = FAST_FORWARD;
+    private int freeCanActivate = 0;        //free agents whose tolerance is not NEVER_ACTIVE
+    private int fastForwardedTicks = 0;
+    private int activeAgents = 0;
+
+    // Activation tolerance of each agent (Agent.activationTolerance), null when k < 0 and the arrest
+    // probability is not monotonic in the ratio, in which case Agent.beingActive is used
+    private int[] tolerance;
+
+    // Spatial index of active agents: per-cell doubly linked lists over agent indices
+    private int[] activeHead;       //first active agent on each cell, -1 if none
+    private int[] activeInCell;     //number of active agents on each cell
+    private int[] activeNext;
+    private int[] activePrev;
+
+    // Spatial reordering: every reorderInterval ticks agents and cops are stored along a Hilbert
+    // curve, in tiles of REORDER_TILE x REORDER_TILE cells visited in a seeded random order
+    private static final int REORDER_TILE = 8;
+    private int reorderInterval = SPATIAL_REORDER_INTERVAL;
+    private int curveSize;          //side of the curve's square: a power of two covering the grid
+    private int[] tileRank;         //visiting position of each tile (curve index / tile area)
+    private long[] reorderKeys;     //scratch: curve position << 32 | previous index
+    private Agent[] reorderAgents;  //scratch: previous order
+    private Cop[] reorderCops;
+    private int[] reorderTolerance;
+    private BitSet reorderFree;
+
+    // Cells whose state may have changed since the last changedCells, marked on every move, activation,
+    // arrest and release once trackChangedCells was called (null before)
+    private BitSet changed;
+    private int[] jailedInCell;     //agents in jail on each cell, kept only while changes are tracked
+
+    // Cell states reported by snapshotCells, in increasing display priority
+    public static final byte CELL_EMPTY = 0;
+    public static final byte CELL_JAILED = 1;
+    public static final byte CELL_QUIET = 2;
+    public static final byte CELL_ACTIVE = 3;
+    public static final byte CELL_COP = 4;
 
     //Parameters are written in main
 
     // Initialize grid, agents, cops, and build neighborhoods
     public World(int width, int height) {
+        this(width, height, new Random().nextLong());
+    }
+
+    // Same as above with a fixed seed, so the whole run can be reproduced
+    public World(int width, int height, long seed) {
         this.grid = new Patch[width][height];
         this.agents = new ArrayList<>();
         this.cops = new ArrayList<>();
-        this.random = new Random();
+        this.createdAgents = new ArrayList<>();
+        this.createdCops = new ArrayList<>();
+        this.seed = seed;
+        this.random = new Random(seed);
+        this.free = new BitSet();
+        this.jailWheel = new JailWheel(MAX_JAIL_TERM + 1);
         
         // Initialize grid
         for (int i = 0; i < width; i++) {
@@ -31,9 +110,18 @@ public class World {
                 grid[i][j] = new Patch(new Location(i, j));
             }
         }
+        this.vision = new VisionDisc(width, height, VISION);
+        this.copsInCell = new int[width * height];
+        this.freeInCell = new int[width * height];
+        this.moveCells = new int[vision.size()];
+        this.activeHead = new int[width * height];
+        this.activeInCell = new int[width * height];
+        Arrays.fill(activeHead, -1);
     }
+
     // Create agents/cops and place them randomly in empty patches
     public void setup(double agentDensity, double copDensity, double k, double threshold, double government_legitimacy) {
+        long t = TickMetrics.start();
         this.k = k;
         this.threshold = threshold;
         this.government_legitimacy = government_legitimacy;
@@ -41,12 +129,15 @@ public class World {
         int totalPatches = grid.length * grid[0].length;
         int numAgents = (int) (agentDensity * totalPatches);
         int numCops = (int) (copDensity * totalPatches);
+        buildEmptyTree();
 
         // Create cops
         for (int i = 0; i < numCops; i++) {
             Location randomLoc = getRandomEmptyLocation();
             if (randomLoc != null) {
                 cops.add(new Cop(randomLoc));
+                createdCops.add(cops.get(cops.size() - 1));
+                copsInCell[cellOf(randomLoc)]++;
             }
         }
 
@@ -56,106 +147,601 @@ public class World {
             if (randomLoc != null) {
                 double riskAversion = random.nextDouble();
                 double perceivedHardship = random.nextDouble();
-                agents.add(new Agent(randomLoc, riskAversion, perceivedHardship));
+                Agent agent = new Agent(randomLoc, riskAversion, perceivedHardship);
+                agent.world = this;
+                agent.index = agents.size();
+                agents.add(agent);
+                createdAgents.add(agent);
+                free.set(agent.index);
+                freeInCell[cellOf(randomLoc)]++;
             }
         }
+        emptyTree = null;
+        activeNext = new int[agents.size()];
+        activePrev = new int[agents.size()];
+        computeTolerances();
+        TickMetrics.lap(TickMetrics.SETUP, t);
     }
 
-    private Location getRandomEmptyLocation() {
-        List<Location> emptyLocations = new ArrayList<>();
-        for (int i = 0; i < grid.length; i++) {
-            for (int j = 0; j < grid[0].length; j++) {
-                if (isLocationEmpty(new Location(i, j))) {
-                    emptyLocations.add(new Location(i, j));
-                }
+    /**
+     * Change the government legitimacy of a running world; activation tolerances are recomputed
+     * and apply from the next tick
+     */
+    public void setGovernmentLegitimacy(double government_legitimacy) {
+        this.government_legitimacy = government_legitimacy;
+        computeTolerances();
+    }
+
+    // Integer activation tolerance of every agent; an agent that is NEVER_ACTIVE has a grievance at
+    // most the threshold, so it stays quiet whatever its neighborhood
+    private void computeTolerances() {
+        tolerance = k < 0 ? null : new int[agents.size()];
+        freeCanActivate = 0;
+        for (Agent agent : agents) {
+            if (tolerance != null) {
+                tolerance[agent.index] = Agent.activationTolerance(agent.risk_aversion, agent.perceived_hardship,
+                        government_legitimacy, k, threshold, cops.size());
+            }
+            if (free.get(agent.index) && canActivate(agent)) {
+                freeCanActivate++;
             }
         }
-        return emptyLocations.isEmpty() ? null : emptyLocations.get(random.nextInt(emptyLocations.size()));
     }
 
-    private boolean isLocationEmpty(Location loc) {
-        return !agents.stream().anyMatch(a -> a.getLocation().equals(loc)) &&
-               !cops.stream().anyMatch(c -> c.getLocation().equals(loc));
+    // Without tolerances (k < 0) every agent counts as able to become active
+    private boolean canActivate(Agent agent) {
+        return tolerance == null || tolerance[agent.index] != Agent.NEVER_ACTIVE;
+    }
+
+    // Empty cells during setup as a Fenwick tree over 0/1 per cell, so that placing a turtle on the
+    // k-th empty cell takes O(log cells) instead of a scan of the grid; the picks are the same
+    private int[] emptyTree;
+    private int emptyCount;
+
+    private void buildEmptyTree() {
+        int cells = copsInCell.length;
+        emptyTree = new int[cells + 1];
+        emptyCount = 0;
+        for (int cell = 0; cell < cells; cell++) {
+            if (copsInCell[cell] + freeInCell[cell] == 0) {
+                emptyTree[cell + 1]++;
+                emptyCount++;
+            }
+            int parent = cell + 1 + ((cell + 1) & -(cell + 1));
+            if (parent <= cells) {
+                emptyTree[parent] += emptyTree[cell + 1];
+            }
+        }
+    }
+
+    // Uniformly random cell without cops or agents (nobody is in jail during setup), null if none;
+    // the cell is taken out of the empty cells
+    private Location getRandomEmptyLocation() {
+        if (emptyCount == 0) {
+            return null;
+        }
+        int pick = random.nextInt(emptyCount);
+        // Descend the tree to the (pick + 1)-th empty cell
+        int position = 0;
+        for (int step = Integer.highestOneBit(emptyTree.length - 1); step > 0; step >>= 1) {
+            if (position + step < emptyTree.length && emptyTree[position + step] <= pick) {
+                position += step;
+                pick -= emptyTree[position];
+            }
+        }
+        for (int i = position + 1; i < emptyTree.length; i += i & -i) {
+            emptyTree[i]--;
+        }
+        emptyCount--;
+        return locationOf(position);
     }
 
     // Move, update status, enforce law, reduce jail terms
     public void tick() {
+        long allocated = TickMetrics.allocatedBytes();
+        long start = TickMetrics.start();
+        long t = start;
+        if (fastForward && skipQuiescent(1, null) == 1) {
+            TickMetrics.lap(TickMetrics.JAIL, t);
+            TickMetrics.tickDone(start, allocated);
+            return;
+        }
+        if (reorderInterval > 0 && ticks % reorderInterval == 0) {
+            reorderSpatially();
+        }
+        PhaseEvent phase = PhaseEvent.isRecorded() ? PhaseEvent.begin(ticks) : null;
         // Follow NetLogo's order: move first, then determine behavior, finally enforce law
         // 1. Move all agents and cops
-        for (Agent agent : agents) {
-            // Only move if MOVEMENT is true or agent is not in jail
-            if (!agent.isJailed() && MOVEMENT) {
-                agent.moveTo(getValidMoveLocation(agent.getLocation()));
+        if (synchronousMovement) {
+            moveSynchronously();
+        } else {
+            // Only agents that are not in jail move (if MOVEMENT is true); jailed agents are not visited at all
+            if (MOVEMENT) {
+                for (int i = free.nextSetBit(0); i >= 0; i = free.nextSetBit(i + 1)) {
+                    Agent agent = agents.get(i);
+                    moveAgent(agent, getValidMoveLocation(agent.getLocation()));
+                }
+            }
+            // Cops always move (indexed loop: no iterator per tick)
+            for (int i = 0; i < cops.size(); i++) {
+                Cop cop = cops.get(i);
+                moveCop(cop, getValidMoveLocation(cop.getLocation()));
             }
         }
-        // Cops always move
-        for (Cop cop : cops) {
-            cop.moveTo(getValidMoveLocation(cop.getLocation()));
+        t = TickMetrics.lap(TickMetrics.MOVE, t);
+        if (phase != null) {
+            phase = phase.next("move");
         }
 
-        // 2. Update all agents' status
-        for (Agent agent : agents) {
-            if (!agent.isJailed()) {
-                agent.beingActive(threshold, government_legitimacy, this);
-            }
+        // 2. Update status of all agents not in jail
+        for (int i = free.nextSetBit(0); i >= 0; i = free.nextSetBit(i + 1)) {
+            determineBehavior(agents.get(i));
+        }
+        t = TickMetrics.lap(TickMetrics.BEHAVIOR, t);
+        if (phase != null) {
+            phase = phase.next("behavior");
         }
 
         // 3. Cops enforce law
-        for (Cop cop : cops) {
-            Optional<Agent> suspect = getRandomActiveAgentInNeighborhood(cop.getLocation());
-            if (suspect.isPresent()) {
-                Agent agent = suspect.get();
-                cop.moveTo(agent.getLocation());
-                agent.setActive(false);
-                agent.setJailTerm(random.nextInt(MAX_JAIL_TERM)); // Use same random range as NetLogo: 0 to MAX_JAIL_TERM-1
-            }
+        for (int i = 0; i < cops.size(); i++) {
+            cops.get(i).arrest(this);
+        }
+        t = TickMetrics.lap(TickMetrics.ENFORCE, t);
+        if (phase != null) {
+            phase = phase.next("enforce");
         }
 
         // 4. Reduce jail terms
-        for (Agent agent : agents) {
-            if (agent.isJailed()) {
-                agent.decre_Jail_term(agent.getJail_term());
+        releaseDue();
+        TickMetrics.lap(TickMetrics.JAIL, t);
+        if (phase != null) {
+            phase.end("jail");
+        }
+        TickMetrics.tickDone(start, allocated);
+    }
+
+    // Advance the clock and release the agents whose term ran out
+    private void releaseDue() {
+        ticks++;
+        List<Agent> released = jailWheel.due(ticks);
+        for (int i = 0; i < released.size(); i++) {
+            Agent agent = released.get(i);
+            int cell = cellOf(agent.getLocation());
+            free.set(agent.index);
+            freeInCell[cell]++;
+            if (changed != null) {
+                jailedInCell[cell]--;
+                changed.set(cell);
+            }
+            if (canActivate(agent)) {
+                freeCanActivate++;
             }
         }
+        released.clear();
     }
 
-    private Location getValidMoveLocation(Location center) {
-        // Create list of neighbors based on circular radius
-        List<Location> validLocations = new ArrayList<>();
-        
-        for (int i = 0; i < grid.length; i++) {
-            for (int j = 0; j < grid[0].length; j++) {
-                Location loc = new Location(i, j);
-                // Check if within vision
-                if (isInVision(center, loc)) {
-                    // Check if valid move location
-                    if (isValidMoveLocation(loc)) {
-                        validLocations.add(loc);
-                    }
+    /**
+     * True when no agent is active and no free agent can become active under the current
+     * parameters: each has a grievance at most the threshold, so it stays quiet whatever the arrest
+     * probability, and with nobody active nobody is arrested. Jailed agents that can become active
+     * end it when they are released, as does a setGovernmentLegitimacy that lowers the tolerances.
+     */
+    public boolean isQuiescent() {
+        return activeAgents == 0 && freeCanActivate == 0;
+    }
+
+    /**
+     * Advance a quiescent world by up to maxTicks ticks at once: the clock jumps ahead and the
+     * agents due are released, until the tick on which a jailed agent that can become active is
+     * released (that tick included). The counts after each of these ticks are exactly those of full
+     * ticks: no agent is active and jailedCounts, if not null, receives the jailed count after each.
+     * Turtles stay where they are and no random numbers are drawn. Returns the number of ticks
+     * advanced, 0 if the world is not quiescent; they count as fast-forwarded.
+     */
+    public int skipQuiescent(int maxTicks, int[] jailedCounts) {
+        int skipped = 0;
+        while (skipped < maxTicks && isQuiescent()) {
+            releaseDue();
+            if (jailedCounts != null) {
+                jailedCounts[skipped] = getJailedAgentCount();
+            }
+            skipped++;
+        }
+        fastForwardedTicks += skipped;
+        return skipped;
+    }
+
+    /**
+     * Enable or disable fast-forwarding through quiescent periods (see skipQuiescent) in tick.
+     * The active, jailed and quiet counts are exactly those of full ticks, but positions (and the
+     * run after them, were it to matter) differ from a full run. Results that use it must say so:
+     * see getFastForwardedTicks.
+     */
+    public void setFastForward(boolean fastForward) {
+        this.fastForward = fastForward;
+    }
+
+    /**
+     * Number of ticks that were fast-forwarded instead of simulated
+     */
+    public int getFastForwardedTicks() {
+        return fastForwardedTicks;
+    }
+
+    /**
+     * Store agents and cops along a tile-shuffled Hilbert curve every interval ticks (0 disables it).
+     * Changes the order in which turtles act, see SpatialOrderBenchmark; getAgents keeps creation order
+     */
+    public void setSpatialReorder(int interval) {
+        this.reorderInterval = Math.max(0, interval);
+    }
+
+    private void reorderSpatially() {
+        int width = grid.length, height = grid[0].length;
+        if (tileRank == null) {
+            curveSize = Integer.highestOneBit(Math.max(Math.max(width, height), REORDER_TILE) - 1) << 1;
+            tileRank = new int[curveSize * curveSize / (REORDER_TILE * REORDER_TILE)];
+            reorderKeys = new long[Math.max(agents.size(), cops.size())];
+            reorderAgents = new Agent[agents.size()];
+            reorderCops = new Cop[cops.size()];
+            reorderTolerance = new int[agents.size()];
+            reorderFree = new BitSet(agents.size());
+        }
+        for (int i = 0; i < tileRank.length; i++) {
+            tileRank[i] = i;
+        }
+        for (int i = tileRank.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int swap = tileRank[i];
+            tileRank[i] = tileRank[j];
+            tileRank[j] = swap;
+        }
+
+        // Agents: sort, then move every index-keyed structure along
+        int n = agents.size();
+        for (int a = 0; a < n; a++) {
+            reorderKeys[a] = (long) curvePosition(agents.get(a).getLocation()) << 32 | a;
+        }
+        Arrays.sort(reorderKeys, 0, n);
+        agents.toArray(reorderAgents);
+        if (tolerance != null) {
+            System.arraycopy(tolerance, 0, reorderTolerance, 0, n);
+        }
+        reorderFree.clear();
+        reorderFree.or(free);
+        free.clear();
+        for (int a = 0; a < n; a++) {
+            int from = (int) reorderKeys[a];
+            Agent agent = reorderAgents[from];
+            agent.index = a;
+            agents.set(a, agent);
+            if (tolerance != null) {
+                tolerance[a] = reorderTolerance[from];
+            }
+            if (reorderFree.get(from)) {
+                free.set(a);
+            }
+        }
+        // Active lists are rebuilt in the new order
+        Arrays.fill(activeHead, -1);
+        Arrays.fill(activeInCell, 0);
+        for (int a = 0; a < n; a++) {
+            Agent agent = agents.get(a);
+            if (agent.isActive()) {
+                addActive(a, cellOf(agent.getLocation()));
+            }
+        }
+
+        for (int c = 0; c < cops.size(); c++) {
+            reorderKeys[c] = (long) curvePosition(cops.get(c).getLocation()) << 32 | c;
+        }
+        Arrays.sort(reorderKeys, 0, cops.size());
+        cops.toArray(reorderCops);
+        for (int c = 0; c < reorderCops.length; c++) {
+            cops.set(c, reorderCops[(int) reorderKeys[c]]);
+        }
+    }
+
+    // Position of a cell in the tile-shuffled Hilbert order
+    private int curvePosition(Location loc) {
+        int d = hilbertIndex(curveSize, loc.getX(), loc.getY());
+        int area = REORDER_TILE * REORDER_TILE;
+        return tileRank[d / area] * area + d % area;
+    }
+
+    // Distance of (x, y) along the Hilbert curve filling an n x n square (n a power of two); every
+    // aligned run of 4^k positions fills a 2^k x 2^k square
+    static int hilbertIndex(int n, int x, int y) {
+        int d = 0;
+        for (int s = n / 2; s > 0; s /= 2) {
+            int rx = (x & s) > 0 ? 1 : 0;
+            int ry = (y & s) > 0 ? 1 : 0;
+            d += s * s * ((3 * rx) ^ ry);
+            // Rotate the quadrant so the sub-curve has the standard orientation
+            if (ry == 0) {
+                if (rx == 1) {
+                    x = n - 1 - x;
+                    y = n - 1 - y;
                 }
+                int t = x;
+                x = y;
+                y = t;
             }
         }
-        
+        return d;
+    }
+
+    /**
+     * Rule A, with the same outcome as Agent.beingActive: agents that are never or always active
+     * need no neighborhood counts, and the others compare the ratio with their tolerance, counting
+     * active agents only when the cops alone do not settle it (ratio <= cops)
+     */
+    private void determineBehavior(Agent agent) {
+        if (tolerance == null) {
+            agent.beingActive(threshold, government_legitimacy, this);
+            return;
+        }
+        int tol = tolerance[agent.index];
+        if (tol == Agent.NEVER_ACTIVE || tol == Agent.ALWAYS_ACTIVE) {
+            agent.setActive(tol == Agent.ALWAYS_ACTIVE);
+            return;
+        }
+        Location location = agent.getLocation();
+        int copsCount = copsOnNeighborhood(location);
+        agent.setActive(copsCount <= tol || copsCount / (countActiveAgentsInNeighborhood(location) + 1) <= tol);
+    }
+
+    /**
+     * Rule C: the cop arrests a random active agent within its vision (if any) and moves to its patch
+     */
+    void enforce(Cop cop) {
+        Agent suspect = randomActiveAgentInNeighborhood(cop.getLocation());
+        if (suspect != null) {
+            TickMetrics.countArrest();
+            moveCop(cop, suspect.getLocation());
+            suspect.setActive(false);
+            suspect.setJailTerm(random.nextInt(MAX_JAIL_TERM)); // Use same random range as NetLogo: 0 to MAX_JAIL_TERM-1
+        }
+    }
+
+    /**
+     * Put an agent in jail for the given number of ticks (at least 1)
+     */
+    void jail(Agent agent, int term) {
+        if (agent.isJailed()) {
+            jailWheel.cancel(agent, agent.releaseTick);
+        } else {
+            int cell = cellOf(agent.getLocation());
+            freeInCell[cell]--;
+            if (canActivate(agent)) {
+                freeCanActivate--;
+            }
+            if (changed != null) {
+                jailedInCell[cell]++;
+                changed.set(cell);
+            }
+        }
+        agent.releaseTick = ticks + term;
+        jailWheel.schedule(agent, agent.releaseTick, ticks);
+        free.clear(agent.index);
+    }
+
+    /**
+     * Enable or disable synchronous movement: every turtle picks its target from the occupancy at the
+     * start of the move phase. A different model from NetLogo's, see MovementComparison
+     */
+    public void setSynchronousMovement(boolean synchronous) {
+        this.synchronousMovement = synchronous;
+    }
+
+    private void moveSynchronously() {
+        int cells = grid.length * grid[0].length;
+        int agentCount = agents.size();
+        int turtles = agentCount + cops.size();
+        if (occupied == null) {
+            occupied = new int[cells];
+            claimant = new int[cells];
+        }
+        if (moveTarget == null || moveTarget.length < turtles) {
+            moveTarget = new int[turtles];
+        }
+        for (int cell = 0; cell < cells; cell++) {
+            occupied[cell] = copsInCell[cell] + freeInCell[cell];
+        }
+
+        // Choose targets in parallel: only reads shared state
+        IntStream.range(0, turtles).parallel().forEach(t -> {
+            if (t < agentCount && (!MOVEMENT || !free.get(t))) {
+                moveTarget[t] = -1;
+            } else {
+                Location from = t < agentCount ? agents.get(t).getLocation() : cops.get(t - agentCount).getLocation();
+                moveTarget[t] = synchronousTarget(t, from);
+            }
+        });
+
+        // Resolve conflicts: each cell goes to its claimant with the lowest priority
+        Arrays.fill(claimant, -1);
+        for (int t = 0; t < turtles; t++) {
+            int cell = moveTarget[t];
+            if (cell >= 0 && (claimant[cell] < 0 || precedes(t, claimant[cell]))) {
+                claimant[cell] = t;
+            }
+        }
+
+        // Apply in turtle order, so the spatial index is updated deterministically
+        for (int t = 0; t < turtles; t++) {
+            int cell = moveTarget[t];
+            if (cell < 0) {
+                continue;
+            }
+            if (claimant[cell] != t) {
+                TickMetrics.countBlockedMove();
+                continue;
+            }
+            if (t < agentCount) {
+                moveAgent(agents.get(t), locationOf(cell));
+            } else {
+                moveCop(cops.get(t - agentCount), locationOf(cell));
+            }
+        }
+    }
+
+    // Uniform pick among the cells within vision that were unoccupied at the start of the phase, -1 if none
+    private int synchronousTarget(int turtle, Location from) {
+        int valid = 0;
+        for (int i = 0; i < vision.size(); i++) {
+            if (occupied[visionCell(from, i)] == 0) {
+                valid++;
+            }
+        }
+        if (valid == 0) {
+            TickMetrics.countBlockedMove();
+            return -1;
+        }
+        // Multiply-shift maps the hash onto [0, valid); the bias is below valid / 2^32
+        int pick = (int) (((moveHash(turtle, 0) >>> 32) * valid) >>> 32);
+        for (int i = 0; ; i++) {
+            int cell = visionCell(from, i);
+            if (occupied[cell] == 0 && pick-- == 0) {
+                return cell;
+            }
+        }
+    }
+
+    private boolean precedes(int a, int b) {
+        int order = Long.compare(moveHash(a, 1), moveHash(b, 1));
+        return order < 0 || (order == 0 && a < b);
+    }
+
+    // SplitMix64 finalizer over (seed, tick, turtle, salt)
+    private long moveHash(int turtle, int salt) {
+        long z = seed + ((((long) ticks << 32) | ((long) turtle << 1 | salt)) + 1) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    // Move an agent that is not in jail, keeping the occupancy counts in step
+    private void moveAgent(Agent agent, Location to) {
+        int from = cellOf(agent.getLocation());
+        freeInCell[from]--;
+        freeInCell[cellOf(to)]++;
+        agent.moveTo(to);
+        if (changed != null) {
+            changed.set(from);
+            changed.set(cellOf(to));
+        }
+    }
+
+    private void moveCop(Cop cop, Location to) {
+        int from = cellOf(cop.getLocation());
+        copsInCell[from]--;
+        copsInCell[cellOf(to)]++;
+        cop.moveTo(to);
+        if (changed != null) {
+            changed.set(from);
+            changed.set(cellOf(to));
+        }
+    }
+
+    // Called by an agent after its active flag flipped
+    void activeChanged(Agent agent) {
+        int cell = cellOf(agent.getLocation());
+        if (changed != null) {
+            changed.set(cell);
+        }
+        if (agent.isActive()) {
+            addActive(agent.index, cell);
+            activeAgents++;
+        } else {
+            removeActive(agent.index, cell);
+            activeAgents--;
+        }
+    }
+
+    // Called by an active agent after it moved
+    void activeAgentMoved(Agent agent, Location from) {
+        removeActive(agent.index, cellOf(from));
+        addActive(agent.index, cellOf(agent.getLocation()));
+    }
+
+    private void addActive(int a, int cell) {
+        int head = activeHead[cell];
+        activeNext[a] = head;
+        activePrev[a] = -1;
+        if (head >= 0) {
+            activePrev[head] = a;
+        }
+        activeHead[cell] = a;
+        activeInCell[cell]++;
+    }
+
+    private void removeActive(int a, int cell) {
+        if (activePrev[a] >= 0) {
+            activeNext[activePrev[a]] = activeNext[a];
+        } else {
+            activeHead[cell] = activeNext[a];
+        }
+        if (activeNext[a] >= 0) {
+            activePrev[activeNext[a]] = activePrev[a];
+        }
+        activeInCell[cell]--;
+    }
+
+    // Cell of the i-th vision offset around loc
+    private int visionCell(Location loc, int i) {
+        return vision.cell(loc.getX(), loc.getY(), i);
+    }
+
+    private int cellOf(Location loc) {
+        return loc.getX() * grid[0].length + loc.getY();
+    }
+
+    // The patch's own Location: one shared instance per cell, so moving never allocates
+    private Location locationOf(int cell) {
+        int height = grid[0].length;
+        return grid[cell / height][cell % height].getLocation();
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Number of completed ticks
+     */
+    public int getTicks() {
+        return ticks;
+    }
+
+    private Location getValidMoveLocation(Location center) {
+        // Cells within vision in the order of a full x-then-y grid scan, as the valid list was built
+        int n = vision.rowMajorCells(center.getX(), center.getY(), moveCells);
+        int valid = 0;
+        for (int i = 0; i < n; i++) {
+            if (isValidMoveLocation(moveCells[i])) {
+                valid++;
+            }
+        }
+
         // If no valid locations, stay in place
-        if (validLocations.isEmpty()) {
+        if (valid == 0) {
+            TickMetrics.countBlockedMove();
             return center;
         }
-        
+
         // Randomly select a valid location
-        return validLocations.get(random.nextInt(validLocations.size()));
+        int pick = random.nextInt(valid);
+        for (int i = 0; ; i++) {
+            if (isValidMoveLocation(moveCells[i]) && pick-- == 0) {
+                return locationOf(moveCells[i]);
+            }
+        }
     }
 
-    private boolean isValidMoveLocation(Location loc) {
-        // Check if there are cops
-        boolean hasCops = cops.stream().anyMatch(c -> c.getLocation().equals(loc));
-        if (hasCops) return false;
-
-        // Check if there are non-jailed agents
-        boolean hasNonJailedAgents = agents.stream()
-            .anyMatch(a -> a.getLocation().equals(loc) && !a.isJailed());
-        if (hasNonJailedAgents) return false;
-
-        return true;
+    // No cops and no agents that are not in jail
+    private boolean isValidMoveLocation(int cell) {
+        return copsInCell[cell] == 0 && freeInCell[cell] == 0;
     }
 
     public double calculateArrestProbability(Location location) {
@@ -169,55 +755,77 @@ public class World {
 
     //Count cops in neighborhood
     public int copsOnNeighborhood(Location location){
-        return (int) cops.stream()
-            .filter(cop -> isInVision(location, cop.getLocation()))
-            .count();
+        int count = 0;
+        for (int i = 0; i < vision.size(); i++) {
+            count += copsInCell[visionCell(location, i)];
+        }
+        return count;
     }
 
-    //Count active agents in neighborhood, excluding self
+    //Count active agents in neighborhood, excluding self (and anyone else on the same patch)
     public int countActiveAgentsInNeighborhood(Location t) {
-        return (int) agents.stream()
-            .filter(a -> !a.isJailed() && a.isActive() && isInVision(t, a.getLocation()) && !a.getLocation().equals(t))
-            .count();
+        int count = 0;
+        for (int i = 0; i < vision.size(); i++) {
+            count += activeInCell[visionCell(t, i)];
+        }
+        return count - activeInCell[cellOf(t)];
     }
 
-    //Find rebels within vision, return null if none
+    //Find rebels within vision, empty if none
     public Optional<Agent> getRandomActiveAgentInNeighborhood(Location location) {
-        List<Agent> activeAgents = agents.stream()
-            .filter(a -> !a.isJailed() && a.isActive() && isInVision(location, a.getLocation()))
-            .toList();
-        return activeAgents.isEmpty() ? Optional.empty() : Optional.of(activeAgents.get(random.nextInt(activeAgents.size())));
+        return Optional.ofNullable(randomActiveAgentInNeighborhood(location));
     }
 
-    private boolean isInVision(Location loc1, Location loc2) {
-        int dx = Math.abs(loc1.getX() - loc2.getX());
-        int dy = Math.abs(loc1.getY() - loc2.getY());
-        
-        // Handle toroidal world boundaries
-        dx = Math.min(dx, grid.length - dx);
-        dy = Math.min(dy, grid[0].length - dy);
-        
-        // Use Euclidean distance to simulate NetLogo's in-radius
-        return Math.sqrt(dx * dx + dy * dy) <= VISION;
+    /**
+     * Uniformly random active agent within vision, null if none.
+     * Counts the active agents over the vision stencil, draws one index and walks the stencil
+     * again to that agent: O(vision area), one random draw and no allocation.
+     */
+    private Agent randomActiveAgentInNeighborhood(Location location) {
+        int total = 0;
+        for (int i = 0; i < vision.size(); i++) {
+            total += activeInCell[visionCell(location, i)];
+        }
+        if (total == 0) {
+            return null;
+        }
+        int pick = random.nextInt(total);
+        for (int i = 0; ; i++) {
+            int cell = visionCell(location, i);
+            if (pick < activeInCell[cell]) {
+                int a = activeHead[cell];
+                for (; pick > 0; pick--) {
+                    a = activeNext[a];
+                }
+                return agents.get(a);
+            }
+            pick -= activeInCell[cell];
+        }
+    }
+
+    /**
+     * Add every cell with active agents to a cluster analysis (after clear(), before analyze())
+     */
+    public void addActiveCells(ClusterAnalyzer analyzer) {
+        for (int cell = 0; cell < activeInCell.length; cell++) {
+            if (activeInCell[cell] > 0) {
+                analyzer.add(cell, activeInCell[cell]);
+            }
+        }
     }
 
     // Add statistics methods
     public int getActiveAgentCount() {
-        return (int) agents.stream()
-            .filter(a -> !a.isJailed() && a.isActive())
-            .count();
+        // Arrested agents are made quiet before they are jailed, so every active agent is free
+        return activeAgents;
     }
 
     public int getJailedAgentCount() {
-        return (int) agents.stream()
-            .filter(Agent::isJailed)
-            .count();
+        return agents.size() - free.cardinality();
     }
 
     public int getQuietAgentCount() {
-        return (int) agents.stream()
-            .filter(a -> !a.isJailed() && !a.isActive())
-            .count();
+        return free.cardinality() - getActiveAgentCount();
     }
 
     public void printStatus() {
@@ -233,5 +841,84 @@ public class World {
         return cops.size();
     }
 
+    /**
+     * Read-only view of the agents, in creation order
+     */
+    public List<Agent> getAgents() {
+        return Collections.unmodifiableList(createdAgents);
+    }
+
+    /**
+     * Read-only view of the cops, in creation order
+     */
+    public List<Cop> getCops() {
+        return Collections.unmodifiableList(createdCops);
+    }
+
+    public int getWidth() {
+        return grid.length;
+    }
+
+    public int getHeight() {
+        return grid[0].length;
+    }
+
+    /**
+     * Write the state of every cell into cells (index x * height + y, length width * height).
+     * When several turtles share a patch the one with the highest CELL_ value is reported.
+     */
+    public void snapshotCells(byte[] cells) {
+        Arrays.fill(cells, CELL_EMPTY);
+        for (Agent agent : agents) {
+            int cell = cellOf(agent.getLocation());
+            byte state = agent.isJailed() ? CELL_JAILED : agent.isActive() ? CELL_ACTIVE : CELL_QUIET;
+            if (state > cells[cell]) {
+                cells[cell] = state;
+            }
+        }
+        for (Cop cop : cops) {
+            cells[cellOf(cop.getLocation())] = CELL_COP;
+        }
+    }
+
+    /**
+     * Start recording which cells change, for changedCells. Every cell counts as changed until the
+     * next changedCells, so the first call after this one reports the whole grid
+     */
+    public void trackChangedCells() {
+        if (changed == null) {
+            changed = new BitSet(copsInCell.length);
+            jailedInCell = new int[copsInCell.length];
+            for (Agent agent : agents) {
+                if (agent.isJailed()) {
+                    jailedInCell[cellOf(agent.getLocation())]++;
+                }
+            }
+        }
+        changed.set(0, copsInCell.length);
+    }
+
+    /**
+     * Write the state of every cell that may have changed since the previous call (or since
+     * trackChangedCells) into cells, as snapshotCells does, and its index into indices; other cells
+     * are left alone. Costs O(changed cells + cells / 64) instead of snapshotCells' O(agents + cells).
+     * @return number of cells written
+     */
+    public int changedCells(byte[] cells, int[] indices) {
+        if (changed == null) {
+            throw new IllegalStateException("trackChangedCells was not called");
+        }
+        int count = 0;
+        for (int cell = changed.nextSetBit(0); cell >= 0; cell = changed.nextSetBit(cell + 1)) {
+            cells[cell] = copsInCell[cell] > 0 ? CELL_COP
+                    : activeInCell[cell] > 0 ? CELL_ACTIVE
+                    : freeInCell[cell] > 0 ? CELL_QUIET
+                    : jailedInCell[cell] > 0 ? CELL_JAILED : CELL_EMPTY;
+            indices[count++] = cell;
+        }
+        changed.clear();
+        return count;
+    }
+
     // ...
 }
@@ -0,0 +1,50 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event spanning one chart render (PNG export or live repaint).
+ * Disabled by default; enable with +rebellion.ChartRender#enabled=true.
+ */
+@Name("rebellion.ChartRender")
+@Label("Chart Render")
+@Category("Rebellion")
+@Description("Rendering of one chart")
+@Enabled(false)
+public class ChartRenderEvent extends Event {
+    @Label("Chart")
+    public String chart;
+
+    @Label("Points")
+    public int points;
+
+    private static final EventType TYPE = EventType.getEventType(ChartRenderEvent.class);
+
+    /**
+     * True when a recording has the event enabled; check it before begin, so that nothing is
+     * created for a render while it is off
+     */
+    public static boolean isRecorded() {
+        return TYPE.isEnabled();
+    }
+
+    public static ChartRenderEvent begin(String chart) {
+        ChartRenderEvent event = new ChartRenderEvent();
+        event.chart = chart;
+        event.begin();
+        return event;
+    }
+
+    public void end(int points) {
+        if (isEnabled()) {
+            this.points = points;
+            commit();
+        }
+    }
+}
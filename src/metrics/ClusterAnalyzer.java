@@ -0,0 +1,174 @@
+package metrics;
+
+import java.util.Arrays;
+
+/**
+ * Connected clusters of active agents on a width x height torus: two cells with active agents
+ * are connected when they lie within radius of each other (Euclidean, each axis taking the
+ * shorter way around, as VisionDisc). Cell index is x * height + y.
+ *
+ * Per tick: clear(), add() every cell with active agents, then analyze(). A union-find over the
+ * cells, with union by size and path halving, only touches the cells added this tick: cells are
+ * marked with the tick's stamp instead of clearing the grid, so the work is proportional to the
+ * active cells times the neighborhood, and nothing is allocated after construction.
+ *
+ * Cluster sizes count agents (a cell may hold several). The size distribution is kept in
+ * power-of-two bins: bin b holds the clusters of 2^b to 2^(b+1) - 1 agents.
+ */
+public class ClusterAnalyzer {
+    public static final int BINS = 32;
+
+    private final int width, height;
+    private final int[] offsetX, offsetY;   //half of the neighborhood: each pair of cells is tried once
+    private final int[] parent;             //union-find parent, valid for cells marked this tick
+    private final int[] size;               //agents in the cluster, valid for roots
+    private final int[] mark;               //stamp of the tick the cell was last added in
+    private final int[] cells;              //cells added this tick
+    private int count = 0;
+    private int stamp = 0;
+
+    private int clusters, largest;
+    private final int[] histogram = new int[BINS];
+
+    public ClusterAnalyzer(int width, int height, int radius) {
+        this.width = width;
+        this.height = height;
+        int n = width * height;
+        parent = new int[n];
+        size = new int[n];
+        mark = new int[n];
+        cells = new int[n];
+
+        // Distinct offsets within radius on this torus, one of each pair (o, -o)
+        int capacity = (int) Math.min(n, (long) (2 * radius + 1) * (2 * radius + 1));
+        int[] xs = new int[capacity], ys = new int[capacity];
+        int k = 0;
+        for (int x = 0; x < width; x++) {
+            int ax = Math.min(x, width - x);
+            if (ax > radius) {
+                continue;
+            }
+            for (int y = 0; y < height; y++) {
+                int ay = Math.min(y, height - y);
+                if ((x | y) == 0 || ax * ax + ay * ay > radius * radius) {
+                    continue;
+                }
+                int mx = (width - x) % width, my = (height - y) % height;
+                // Keep (x, y) when it comes before its mirror, or is its own mirror
+                if (x < mx || (x == mx && y <= my)) {
+                    xs[k] = x;
+                    ys[k] = y;
+                    k++;
+                }
+            }
+        }
+        offsetX = Arrays.copyOf(xs, k);
+        offsetY = Arrays.copyOf(ys, k);
+    }
+
+    /**
+     * Start a new tick
+     */
+    public void clear() {
+        count = 0;
+        if (++stamp == 0) {
+            // Wrapped around after 2^32 ticks: old marks could collide
+            Arrays.fill(mark, 0);
+            stamp = 1;
+        }
+    }
+
+    /**
+     * The cell holds agents active agents (agents > 0); a cell added twice accumulates
+     */
+    public void add(int cell, int agents) {
+        if (mark[cell] == stamp) {
+            size[find(cell)] += agents;
+            return;
+        }
+        mark[cell] = stamp;
+        parent[cell] = cell;
+        size[cell] = agents;
+        cells[count++] = cell;
+    }
+
+    /**
+     * Join the added cells into clusters and compute the statistics
+     */
+    public void analyze() {
+        for (int i = 0; i < count; i++) {
+            int cell = cells[i];
+            int x = cell / height, y = cell % height;
+            for (int o = 0; o < offsetX.length; o++) {
+                int other = ((x + offsetX[o]) % width) * height + (y + offsetY[o]) % height;
+                if (mark[other] == stamp) {
+                    union(cell, other);
+                }
+            }
+        }
+        clusters = 0;
+        largest = 0;
+        Arrays.fill(histogram, 0);
+        for (int i = 0; i < count; i++) {
+            int cell = cells[i];
+            if (parent[cell] == cell) {
+                clusters++;
+                largest = Math.max(largest, size[cell]);
+                histogram[binOf(size[cell])]++;
+            }
+        }
+    }
+
+    private int find(int cell) {
+        while (parent[cell] != cell) {
+            parent[cell] = parent[parent[cell]];
+            cell = parent[cell];
+        }
+        return cell;
+    }
+
+    private void union(int a, int b) {
+        a = find(a);
+        b = find(b);
+        if (a == b) {
+            return;
+        }
+        if (size[a] < size[b]) {
+            int swap = a;
+            a = b;
+            b = swap;
+        }
+        parent[b] = a;
+        size[a] += size[b];
+    }
+
+    public int getClusterCount() {
+        return clusters;
+    }
+
+    /**
+     * Agents in the largest cluster, 0 if there is none
+     */
+    public int getLargestCluster() {
+        return largest;
+    }
+
+    /**
+     * Clusters of 2^bin to 2^(bin+1) - 1 agents
+     */
+    public int getClusters(int bin) {
+        return histogram[bin];
+    }
+
+    public static int binOf(int agents) {
+        return 31 - Integer.numberOfLeadingZeros(agents);
+    }
+
+    /**
+     * Range of cluster sizes in a bin, e.g. "4-7" ("1" for bin 0)
+     */
+    public static String binLabel(int bin) {
+        long lo = 1L << bin, hi = (1L << (bin + 1)) - 1;
+        return lo == hi ? String.valueOf(lo) : lo + "-" + hi;
+    }
+}
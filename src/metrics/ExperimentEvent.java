@@ -0,0 +1,46 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event spanning one ParameterExplorer experiment, with its parameter set and seed.
+ * Disabled by default; enable with +rebellion.Experiment#enabled=true.
+ */
+@Name("rebellion.Experiment")
+@Label("Experiment")
+@Category("Rebellion")
+@Description("One parameter-set run of ParameterExplorer")
+@Enabled(false)
+public class ExperimentEvent extends Event {
+    @Label("Experiment ID")
+    public int experimentId;
+
+    @Label("Description")
+    public String description;
+
+    @Label("Cop Density")
+    public double copDensity;
+
+    @Label("Agent Density")
+    public double agentDensity;
+
+    @Label("Legitimacy")
+    public double legitimacy;
+
+    @Label("Jail Term")
+    public int jailTerm;
+
+    @Label("Vision")
+    public int vision;
+
+    @Label("Seed")
+    public long seed;
+
+    @Label("Steps")
+    public int steps;
+}
@@ -0,0 +1,61 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event spanning one phase of World.tick (move, behavior, enforce, jail).
+ * Disabled by default; enable with +rebellion.Phase#enabled=true in -XX:StartFlightRecording.
+ */
+@Name("rebellion.Phase")
+@Label("Tick Phase")
+@Category("Rebellion")
+@Description("One phase of a simulation tick")
+@Enabled(false)
+public class PhaseEvent extends Event {
+    @Label("Phase")
+    String phase;
+
+    @Label("Tick")
+    int tick;
+
+    private static final EventType TYPE = EventType.getEventType(PhaseEvent.class);
+
+    /**
+     * True when a recording has the event enabled; read once per tick so that nothing is
+     * created for the phases while it is off
+     */
+    public static boolean isRecorded() {
+        return TYPE.isEnabled();
+    }
+
+    public static PhaseEvent begin(int tick) {
+        PhaseEvent event = new PhaseEvent();
+        event.tick = tick;
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Commit this phase and begin the event of the next one
+     */
+    public PhaseEvent next(String phase) {
+        if (!isEnabled()) {
+            return this;
+        }
+        end(phase);
+        return begin(tick);
+    }
+
+    public void end(String phase) {
+        if (isEnabled()) {
+            this.phase = phase;
+            commit();
+        }
+    }
+}
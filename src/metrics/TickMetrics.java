@@ -0,0 +1,222 @@
+package metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.ObjectName;
+
+/**
+ * Process-wide per-phase tick instrumentation, published through the platform MBean server.
+ * Enabled with -Drebellion.metrics=true. ENABLED is a static final constant, so when it is
+ * off every call below is folded away by the JIT and costs nothing.
+ *
+ * Phase timing: start a tick with start(), then lap(PHASE, t) after each phase.
+ */
+public class TickMetrics implements TickMetricsMBean {
+    public static final boolean ENABLED = Boolean.getBoolean("rebellion.metrics");
+
+    public static final int MOVE = 0;
+    public static final int BEHAVIOR = 1;
+    public static final int ENFORCE = 2;
+    public static final int JAIL = 3;
+    public static final int TICK = 4;
+    public static final int SETUP = 5;
+    public static final int OUTPUT = 6;
+
+    private static final TickMetrics INSTANCE = ENABLED ? register() : null;
+
+    private final LatencyHistogram[] phases = new LatencyHistogram[OUTPUT + 1];
+    private final LatencyHistogram allocation = new LatencyHistogram();
+    private final LongAdder ticks = new LongAdder();
+    private final LongAdder arrests = new LongAdder();
+    private final LongAdder blockedMoves = new LongAdder();
+    private final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    // Ticks per second over the last completed one-second window
+    private long windowStart = System.nanoTime();
+    private long windowTicks = 0;
+    private volatile double ticksPerSecond = 0;
+
+    private TickMetrics() {
+        for (int i = 0; i < phases.length; i++) {
+            phases[i] = new LatencyHistogram();
+        }
+    }
+
+    private static TickMetrics register() {
+        TickMetrics metrics = new TickMetrics();
+        try {
+            ManagementFactory.getPlatformMBeanServer()
+                    .registerMBean(metrics, new ObjectName("rebellion:type=TickMetrics"));
+        } catch (Exception e) {
+            System.err.println("Error registering TickMetrics MBean: " + e.getMessage());
+        }
+        return metrics;
+    }
+
+    /**
+     * Timestamp for the first lap, 0 when disabled
+     */
+    public static long start() {
+        return ENABLED ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Record the time since start under the given phase and return the new timestamp
+     */
+    public static long lap(int phase, long start) {
+        if (!ENABLED) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        INSTANCE.phases[phase].record(now - start);
+        return now;
+    }
+
+    /**
+     * Bytes allocated so far by the calling thread, 0 when disabled
+     */
+    public static long allocatedBytes() {
+        return ENABLED ? INSTANCE.threads.getCurrentThreadAllocatedBytes() : 0;
+    }
+
+    /**
+     * Record a finished tick that started at start with allocatedBefore bytes allocated
+     */
+    public static void tickDone(long start, long allocatedBefore) {
+        if (!ENABLED) {
+            return;
+        }
+        lap(TICK, start);
+        INSTANCE.allocation.record(allocatedBytes() - allocatedBefore);
+        INSTANCE.ticks.increment();
+        INSTANCE.updateRate();
+    }
+
+    public static void countArrest() {
+        if (ENABLED) {
+            INSTANCE.arrests.increment();
+        }
+    }
+
+    public static void countBlockedMove() {
+        if (ENABLED) {
+            INSTANCE.blockedMoves.increment();
+        }
+    }
+
+    private synchronized void updateRate() {
+        windowTicks++;
+        long now = System.nanoTime();
+        if (now - windowStart >= 1_000_000_000L) {
+            ticksPerSecond = windowTicks * 1e9 / (now - windowStart);
+            windowStart = now;
+            windowTicks = 0;
+        }
+    }
+
+    private double micros(int phase, double q) {
+        return phases[phase].percentile(q) / 1000.0;
+    }
+
+    @Override
+    public long getTicks() {
+        return ticks.sum();
+    }
+
+    @Override
+    public double getTicksPerSecond() {
+        return ticksPerSecond;
+    }
+
+    @Override
+    public long getArrests() {
+        return arrests.sum();
+    }
+
+    @Override
+    public long getBlockedMoves() {
+        return blockedMoves.sum();
+    }
+
+    @Override
+    public long getAllocatedBytesPerTick() {
+        return allocation.percentile(0.5);
+    }
+
+    @Override
+    public double getMoveP50Micros() {
+        return micros(MOVE, 0.5);
+    }
+
+    @Override
+    public double getMoveP99Micros() {
+        return micros(MOVE, 0.99);
+    }
+
+    @Override
+    public double getBehaviorP50Micros() {
+        return micros(BEHAVIOR, 0.5);
+    }
+
+    @Override
+    public double getBehaviorP99Micros() {
+        return micros(BEHAVIOR, 0.99);
+    }
+
+    @Override
+    public double getEnforceP50Micros() {
+        return micros(ENFORCE, 0.5);
+    }
+
+    @Override
+    public double getEnforceP99Micros() {
+        return micros(ENFORCE, 0.99);
+    }
+
+    @Override
+    public double getJailP50Micros() {
+        return micros(JAIL, 0.5);
+    }
+
+    @Override
+    public double getJailP99Micros() {
+        return micros(JAIL, 0.99);
+    }
+
+    @Override
+    public double getTickP50Micros() {
+        return micros(TICK, 0.5);
+    }
+
+    @Override
+    public double getTickP99Micros() {
+        return micros(TICK, 0.99);
+    }
+
+    @Override
+    public double getSetupP50Micros() {
+        return micros(SETUP, 0.5);
+    }
+
+    @Override
+    public double getOutputP50Micros() {
+        return micros(OUTPUT, 0.5);
+    }
+
+    @Override
+    public double getOutputP99Micros() {
+        return micros(OUTPUT, 0.99);
+    }
+
+    @Override
+    public void reset() {
+        for (LatencyHistogram phase : phases) {
+            phase.reset();
+        }
+        allocation.reset();
+        ticks.reset();
+        arrests.reset();
+        blockedMoves.reset();
+    }
+}
@@ -0,0 +1,45 @@
+package metrics;
+
+/**
+ * JMX view of TickMetrics, registered as rebellion:type=TickMetrics.
+ * Times are in microseconds.
+ */
+public interface TickMetricsMBean {
+    long getTicks();
+
+    double getTicksPerSecond();
+
+    long getArrests();
+
+    long getBlockedMoves();
+
+    long getAllocatedBytesPerTick();
+
+    double getMoveP50Micros();
+
+    double getMoveP99Micros();
+
+    double getBehaviorP50Micros();
+
+    double getBehaviorP99Micros();
+
+    double getEnforceP50Micros();
+
+    double getEnforceP99Micros();
+
+    double getJailP50Micros();
+
+    double getJailP99Micros();
+
+    double getTickP50Micros();
+
+    double getTickP99Micros();
+
+    double getSetupP50Micros();
+
+    double getOutputP50Micros();
+
+    double getOutputP99Micros();
+
+    void reset();
+}